@@ -17,6 +17,13 @@ public final class UBBiome {
 
   public StrataLayer[] strata;
 
+  /**
+   * Strata block for each height between {@link #strataMinHeight} and the top
+   * of the highest layer, everything else is {@link #filler}
+   */
+  private IBlockState[] strataByHeight = new IBlockState[0];
+  private int strataMinHeight;
+
   public UBBiome(int ID, BlockEntry blockEntry, int meta) {
     this(ID, blockEntry.getBlock(), meta);
   }
@@ -32,15 +39,45 @@ public final class UBBiome {
 
   public UBBiome addStrataLayers(StrataLayer[] strata) {
     this.strata = strata;
+    buildStrataByHeight();
     return this;
   }
 
-  public IBlockState getStrataBlockAtLayer(int y) {
+  /**
+   * Precompute the strata lookup, must be called again if {@link #strata} is
+   * modified directly.
+   */
+  public void buildStrataByHeight() {
+    if (strata == null || strata.length == 0) {
+      strataByHeight = new IBlockState[0];
+      return;
+    }
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
     for (StrataLayer layer : strata) {
-      if (layer.heightInLayer(y))
-        return layer.filler;
+      min = Math.min(min, layer.minHeight);
+      max = Math.max(max, layer.maxHeight);
+    }
+    IBlockState[] result = new IBlockState[Math.max(0, max - min + 1)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = filler;
+      // First matching layer wins, as in the layers scan
+      for (StrataLayer layer : strata) {
+        if (layer.heightInLayer(min + i)) {
+          result[i] = layer.filler;
+          break;
+        }
+      }
     }
-    return filler;
+    strataMinHeight = min;
+    strataByHeight = result;
+  }
+
+  public IBlockState getStrataBlockAtLayer(int y) {
+    int index = y - strataMinHeight;
+    if (index < 0 || index >= strataByHeight.length)
+      return filler;
+    return strataByHeight[index];
   }
 
 }
@@ -66,6 +66,26 @@ public interface UBSettings {
 
   boolean replaceMossyCobblestone();
 
+  boolean legacyStoneReplacement();
+
+  boolean strictStrataVariation();
+
+  int biomeCacheSize();
+
+  int biomeTileCacheSize();
+
+  int replacementThreads();
+
+  int replacementTickBudget();
+
+  boolean primerStoneReplacement();
+
+  boolean retrogen();
+
+  int retrogenChunksPerTick();
+
+  int retrogenTickBudget();
+
   boolean buttonsOn();
 
   boolean igneousButtonsOn();
@@ -122,6 +142,8 @@ public interface UBSettings {
 
   boolean plainSlabTextures();
 
+  boolean compositeOreTextures();
+
   boolean alternativeSlabTextures();
 
   boolean generationAllowed(IBlockState block);
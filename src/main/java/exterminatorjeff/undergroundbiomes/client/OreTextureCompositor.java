@@ -0,0 +1,258 @@
+package exterminatorjeff.undergroundbiomes.client;
+
+import exterminatorjeff.undergroundbiomes.api.API;
+import exterminatorjeff.undergroundbiomes.api.ModInfo;
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import exterminatorjeff.undergroundbiomes.common.block.UBOre;
+import exterminatorjeff.undergroundbiomes.config.UBConfig;
+import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.resources.IResource;
+import net.minecraft.client.resources.IResourceManager;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.client.event.TextureStitchEvent;
+import net.minecraftforge.fml.common.Loader;
+import net.minecraftforge.fml.common.eventhandler.EventPriority;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Level;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Merges the stone and overlay textures of UB ores into one sprite, so ores
+ * are a single opaque cube rendered in the solid layer.<br>
+ * <br>
+ * Only done with the CompositeOreTextures setting, for ores without color and
+ * with still textures. Merged images are cached on disk by the hash of their
+ * sources.
+ */
+@SideOnly(Side.CLIENT)
+public enum OreTextureCompositor {
+  INSTANCE;
+
+  private static final UBLogger LOGGER = new UBLogger(OreTextureCompositor.class, Level.INFO);
+  /**
+   * Increase when the merging gives other images
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * Stone and overlay textures to merged sprite
+   */
+  private final Map<List<ResourceLocation>, ResourceLocation> composites = new HashMap<>();
+  private final Set<UBOre> solidOres = new HashSet<>();
+  private int cached = 0;
+  private int merged = 0;
+  private long mergeNanos = 0;
+
+  private static File cacheDirectory() {
+    return new File(Loader.instance().getConfigDir().getParentFile(), ModInfo.MODID + "/composite");
+  }
+
+  /**
+   * @return The merged sprite, null if the ore is rendered with two layers
+   */
+  public ResourceLocation compositeFor(ResourceLocation stoneTexture, ResourceLocation overlayTexture) {
+    return composites.get(Arrays.asList(stoneTexture, overlayTexture));
+  }
+
+  /**
+   * @return True if every variant of the ore uses a merged sprite
+   */
+  public boolean isSolid(UBOre ore) {
+    return solidOres.contains(ore);
+  }
+
+  /**
+   * After {@link OverlaySprites} merged identical overlays
+   */
+  @SubscribeEvent(priority = EventPriority.LOW)
+  public void onTextureStitchPre(TextureStitchEvent.Pre event) {
+    composites.clear();
+    solidOres.clear();
+    cached = 0;
+    merged = 0;
+    mergeNanos = 0;
+    if (!UBConfig.SPECIFIC.compositeOreTextures())
+      return;
+    IResourceManager manager = Minecraft.getMinecraft().getResourceManager();
+    for (UBOre ore : API.REGISTERED_ORES) {
+      ResourceLocation overlay = OresRegistry.INSTANCE.getOverlayFor(ore.baseOre, ore.baseOreMeta);
+      if (overlay != null)
+        overlay = OverlaySprites.INSTANCE.canonical(overlay);
+      // Tint applies to the overlay quad only
+      if (overlay == null || ore.config.getColor() != null || isAnimated(manager, overlay))
+        continue;
+      boolean solid = true;
+      for (int meta = 0; meta < ore.getNbVariants(); ++meta) {
+        ResourceLocation stone = new ResourceLocation(ModInfo.MODID + ":blocks/" + ore.getVariantName(meta));
+        List<ResourceLocation> key = Arrays.asList(stone, overlay);
+        if (composites.containsKey(key))
+          continue;
+        if (isAnimated(manager, stone)) {
+          solid = false;
+          continue;
+        }
+        ResourceLocation composite = new ResourceLocation(ModInfo.MODID, "blocks/composite/" + stone.getPath()
+            .substring("blocks/".length()) + "_" + overlay.getNamespace() + "_" + overlay.getPath().replace('/', '_'));
+        event.getMap().setTextureEntry(new CompositeSprite(composite.toString(), stone, overlay));
+        composites.put(key, composite);
+      }
+      if (solid)
+        solidOres.add(ore);
+    }
+  }
+
+  @SubscribeEvent
+  public void onTextureStitchPost(TextureStitchEvent.Post event) {
+    if (!composites.isEmpty())
+      LOGGER.info(composites.size() + " composite ore textures, " + cached + " from the disk cache, " + merged
+          + " merged in " + mergeNanos / 1000000 + " ms");
+  }
+
+  private static ResourceLocation textureFile(ResourceLocation texture) {
+    return new ResourceLocation(texture.getNamespace(), "textures/" + texture.getPath() + ".png");
+  }
+
+  private static boolean isAnimated(IResourceManager manager, ResourceLocation texture) {
+    try (IResource resource = manager.getResource(textureFile(texture))) {
+      return resource.getMetadata("animation") != null;
+    } catch (IOException | RuntimeException e) {
+      // Missing textures keep the usual model
+      return true;
+    }
+  }
+
+  private static byte[] read(IResourceManager manager, ResourceLocation texture) throws IOException {
+    try (IResource resource = manager.getResource(textureFile(texture)); InputStream in = resource.getInputStream()) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private static String hash(byte[] stone, byte[] overlay) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update((byte) VERSION);
+      digest.update(stone);
+      digest.update(overlay);
+      StringBuilder result = new StringBuilder();
+      for (byte b : digest.digest())
+        result.append(String.format("%02x", b));
+      return result.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private BufferedImage composite(IResourceManager manager, ResourceLocation stoneTexture,
+      ResourceLocation overlayTexture) throws IOException {
+    long start = System.nanoTime();
+    byte[] stoneData = read(manager, stoneTexture);
+    byte[] overlayData = read(manager, overlayTexture);
+    File file = new File(cacheDirectory(), hash(stoneData, overlayData) + ".png");
+    if (file.isFile()) {
+      BufferedImage image = ImageIO.read(file);
+      if (image != null) {
+        ++cached;
+        return image;
+      }
+    }
+    BufferedImage stone = ImageIO.read(new ByteArrayInputStream(stoneData));
+    BufferedImage overlay = ImageIO.read(new ByteArrayInputStream(overlayData));
+    if (stone == null || overlay == null)
+      throw new IOException("unreadable image");
+    int size = Math.max(stone.getWidth(), overlay.getWidth());
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < size; ++y) {
+      for (int x = 0; x < size; ++x) {
+        // Nearest pixel when the resolutions differ
+        int below = stone.getRGB(x * stone.getWidth() / size, y * stone.getWidth() / size);
+        int above = overlay.getRGB(x * overlay.getWidth() / size, y * overlay.getWidth() / size);
+        image.setRGB(x, y, blend(below, above));
+      }
+    }
+    File directory = file.getParentFile();
+    if (directory.isDirectory() || directory.mkdirs()) {
+      File temp = new File(directory, file.getName() + ".tmp");
+      ImageIO.write(image, "png", temp);
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    ++merged;
+    mergeNanos += System.nanoTime() - start;
+    return image;
+  }
+
+  /**
+   * Overlay over stone, the stone alpha is kept
+   */
+  private static int blend(int below, int above) {
+    int alpha = above >>> 24;
+    int result = below & 0xFF000000;
+    for (int shift = 0; shift < 24; shift += 8) {
+      int channel = ((above >> shift & 0xFF) * alpha + (below >> shift & 0xFF) * (255 - alpha)) / 255;
+      result |= channel << shift;
+    }
+    return result;
+  }
+
+  private final class CompositeSprite extends TextureAtlasSprite {
+    private final ResourceLocation stone;
+    private final ResourceLocation overlay;
+
+    CompositeSprite(String name, ResourceLocation stone, ResourceLocation overlay) {
+      super(name);
+      this.stone = stone;
+      this.overlay = overlay;
+    }
+
+    @Override
+    public boolean hasCustomLoader(IResourceManager manager, ResourceLocation location) {
+      return true;
+    }
+
+    /**
+     * @return False once loaded, true if the sprite couldn't be made
+     */
+    @Override
+    public boolean load(IResourceManager manager, ResourceLocation location,
+        Function<ResourceLocation, TextureAtlasSprite> textureGetter) {
+      try {
+        BufferedImage image = composite(manager, stone, overlay);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        setIconWidth(width);
+        setIconHeight(height);
+        int[][] pixels = new int[Minecraft.getMinecraft().gameSettings.mipmapLevels + 1][];
+        pixels[0] = new int[width * height];
+        image.getRGB(0, 0, width, height, pixels[0], 0, width);
+        framesTextureData.clear();
+        framesTextureData.add(pixels);
+        return false;
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("Can't merge " + stone + " and " + overlay + ": " + e);
+        return true;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+package exterminatorjeff.undergroundbiomes.client;
+
+import exterminatorjeff.undergroundbiomes.api.API;
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import exterminatorjeff.undergroundbiomes.common.block.UBOre;
+import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.renderer.texture.TextureMap;
+import net.minecraft.client.resources.IResource;
+import net.minecraft.client.resources.IResourceManager;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.client.event.TextureStitchEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Level;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registers in the blocks atlas the overlays of the registered
+ * {@link UBOre}s only, once per distinct image.<br>
+ * <br>
+ * Overlays with the same content as another one are replaced by it in the
+ * ore models, see {@link #canonical(ResourceLocation)}.
+ */
+@SideOnly(Side.CLIENT)
+public enum OverlaySprites {
+  INSTANCE;
+
+  private static final UBLogger LOGGER = new UBLogger(OverlaySprites.class, Level.INFO);
+
+  /**
+   * Duplicated overlay to the registered one with the same content
+   */
+  private final Map<ResourceLocation, ResourceLocation> aliases = new HashMap<>();
+  private final Set<ResourceLocation> registered = new LinkedHashSet<>();
+  private int used = 0;
+
+  /**
+   * @return The overlay registered in the atlas for this one
+   */
+  public ResourceLocation canonical(ResourceLocation overlay) {
+    return aliases.getOrDefault(overlay, overlay);
+  }
+
+  @SubscribeEvent
+  public void onTextureStitchPre(TextureStitchEvent.Pre event) {
+    aliases.clear();
+    registered.clear();
+    Set<ResourceLocation> overlays = new LinkedHashSet<>();
+    for (UBOre ore : API.REGISTERED_ORES) {
+      ResourceLocation overlay = OresRegistry.INSTANCE.getOverlayFor(ore.baseOre, ore.baseOreMeta);
+      if (overlay != null)
+        overlays.add(overlay);
+    }
+    used = overlays.size();
+    IResourceManager manager = Minecraft.getMinecraft().getResourceManager();
+    Map<String, ResourceLocation> byContent = new HashMap<>();
+    for (ResourceLocation overlay : overlays) {
+      String hash = hash(manager, overlay);
+      ResourceLocation same = hash == null ? null : byContent.putIfAbsent(hash, overlay);
+      if (same != null) {
+        aliases.put(overlay, same);
+      } else {
+        event.getMap().registerSprite(overlay);
+        registered.add(overlay);
+      }
+    }
+  }
+
+  @SubscribeEvent
+  public void onTextureStitchPost(TextureStitchEvent.Post event) {
+    TextureMap map = event.getMap();
+    long pixels = 0;
+    for (ResourceLocation overlay : registered) {
+      TextureAtlasSprite sprite = map.getAtlasSprite(overlay.toString());
+      pixels += (long) sprite.getIconWidth() * sprite.getIconHeight() * Math.max(1, sprite.getFrameCount());
+    }
+    LOGGER.info("UB ore overlays: " + registered.size() + " sprites, " + pixels + " pixels (" + pixels * 4 / 1024
+        + " KB); " + aliases.size() + " identical overlays merged, "
+        + (OresRegistry.INSTANCE.overlayCount() - used) + " overlays of unregistered ores skipped");
+  }
+
+  /**
+   * @return null if the texture can't be read, it is then registered as is
+   */
+  private static String hash(IResourceManager manager, ResourceLocation texture) {
+    ResourceLocation file = new ResourceLocation(texture.getNamespace(), "textures/" + texture.getPath() + ".png");
+    try (IResource resource = manager.getResource(file); InputStream in = resource.getInputStream()) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(IOUtils.toByteArray(in));
+      // Overlays with metadata, animated ones, are never merged
+      if (resource.hasMetadata())
+        return null;
+      StringBuilder result = new StringBuilder();
+      for (byte b : digest.digest())
+        result.append(String.format("%02x", b));
+      return result.toString();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      return null;
+    }
+  }
+
+}
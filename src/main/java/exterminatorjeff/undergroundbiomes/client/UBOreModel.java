@@ -1,6 +1,5 @@
 package exterminatorjeff.undergroundbiomes.client;
 
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import exterminatorjeff.undergroundbiomes.api.ModInfo;
 import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
@@ -12,7 +11,6 @@ import net.minecraft.client.renderer.texture.TextureAtlasSprite;
 import net.minecraft.client.renderer.vertex.VertexFormat;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.client.model.IModel;
-import net.minecraftforge.client.model.ModelLoaderRegistry;
 import net.minecraftforge.common.model.IModelState;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
@@ -22,7 +20,8 @@ import java.util.Collection;
 
 /**
  * The model used to render {@link UBOre} blocks.<br>
- * One instance per UBOre instance.
+ * One instance per UBOre instance, baked models are shared through
+ * {@link UBOreModelCache}.
  *
  * @author LouisDB
  */
@@ -35,16 +34,8 @@ public class UBOreModel implements IModel {
 
   private final ResourceLocation stoneTexture;
   private final ResourceLocation oreTexture;
-  private final IModel baseModel;
 
   public UBOreModel(UBOreModelResourceLocation location) {
-    IModel baseModel = null;
-    try {
-      baseModel = ModelLoaderRegistry.getModel(new ResourceLocation(UBORE_MODEL_PATH));
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    this.baseModel = baseModel;
     stoneTexture = new ResourceLocation(ModInfo.MODID + ":blocks/" + location.getVariant());
     oreTexture = OresRegistry.INSTANCE.getOverlayFor(location.ubOre.baseOre, location.ubOre.baseOreMeta);
   }
@@ -61,8 +52,11 @@ public class UBOreModel implements IModel {
 
   @Override
   public IBakedModel bake(IModelState state, VertexFormat format, java.util.function.Function<ResourceLocation, TextureAtlasSprite> bakedTextureGetter) {
-    IModel finalModel = baseModel.retexture(ImmutableMap.of("stone", stoneTexture.toString(), "ore", oreTexture.toString()));
-    return finalModel.bake(state, format, bakedTextureGetter);
+    ResourceLocation overlay = OverlaySprites.INSTANCE.canonical(oreTexture);
+    ResourceLocation composite = OreTextureCompositor.INSTANCE.compositeFor(stoneTexture, overlay);
+    if (composite != null)
+      return UBOreModelCache.INSTANCE.getSolid(composite, state, format, bakedTextureGetter);
+    return UBOreModelCache.INSTANCE.get(stoneTexture, overlay, state, format, bakedTextureGetter);
   }
 
   @Override
@@ -0,0 +1,213 @@
+package exterminatorjeff.undergroundbiomes.client;
+
+import com.google.common.collect.ImmutableMap;
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.block.model.IBakedModel;
+import net.minecraft.client.renderer.block.model.ItemCameraTransforms;
+import net.minecraft.client.renderer.block.model.ItemOverrideList;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.renderer.vertex.VertexFormat;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.client.event.ModelBakeEvent;
+import net.minecraftforge.client.model.IModel;
+import net.minecraftforge.client.model.ModelLoaderRegistry;
+import net.minecraftforge.common.model.IModelState;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.logging.log4j.Level;
+
+import javax.annotation.Nullable;
+import javax.vecmath.Matrix4f;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Baked models of the {@link UBOreModel}s, shared by every ore using the same
+ * stone and overlay textures.<br>
+ * <br>
+ * The base model is resolved once per resource reload, while models load.
+ * Models are baked on first use, not while the model loader bakes everything.
+ */
+@SideOnly(Side.CLIENT)
+public enum UBOreModelCache {
+  INSTANCE;
+
+  private static final UBLogger LOGGER = new UBLogger(UBOreModelCache.class, Level.INFO);
+
+  private IModel baseModel;
+  private IModel solidModel;
+  private final Map<List<Object>, LazyModel> models = new HashMap<>();
+  private int requests = 0;
+  private int baked = 0;
+  private long bakeNanos = 0;
+
+  /**
+   * Resources are reloading, report and drop the models of the previous ones.
+   */
+  synchronized void clear() {
+    if (requests > 0)
+      LOGGER.info(report());
+    baseModel = null;
+    solidModel = null;
+    models.clear();
+    requests = 0;
+    baked = 0;
+    bakeNanos = 0;
+  }
+
+  @SubscribeEvent
+  public void onModelBake(ModelBakeEvent event) {
+    LOGGER.info(report() + ", the others are baked on first use");
+  }
+
+  synchronized String report() {
+    return requests + " UB ore models requested, " + models.size() + " distinct, " + baked + " baked in "
+        + bakeNanos / 1000000 + " ms";
+  }
+
+  private IModel baseModel() {
+    if (baseModel == null) {
+      try {
+        baseModel = ModelLoaderRegistry.getModel(new ResourceLocation(UBOreModel.UBORE_MODEL_PATH));
+      } catch (Exception e) {
+        LOGGER.error("Can't load the " + UBOreModel.UBORE_MODEL_PATH + " model: " + e);
+        baseModel = ModelLoaderRegistry.getMissingModel();
+      }
+    }
+    return baseModel;
+  }
+
+  private IModel solidModel() {
+    if (solidModel == null) {
+      try {
+        solidModel = ModelLoaderRegistry.getModel(new ResourceLocation("minecraft:block/cube_all"));
+      } catch (Exception e) {
+        LOGGER.error("Can't load the minecraft:block/cube_all model: " + e);
+        solidModel = ModelLoaderRegistry.getMissingModel();
+      }
+    }
+    return solidModel;
+  }
+
+  /**
+   * Two quads per face, the stone and the overlay
+   */
+  synchronized IBakedModel get(ResourceLocation stoneTexture, ResourceLocation oreTexture, IModelState state,
+      VertexFormat format, Function<ResourceLocation, TextureAtlasSprite> bakedTextureGetter) {
+    ++requests;
+    // The model registry is only usable while models load, baking may happen later
+    baseModel();
+    ImmutableMap<String, String> textures = ImmutableMap.of("stone", stoneTexture.toString(), "ore",
+        oreTexture.toString());
+    return models.computeIfAbsent(Arrays.asList(textures, state, format),
+        key -> new LazyModel(false, textures, state, format, bakedTextureGetter));
+  }
+
+  /**
+   * One opaque cube, see {@link OreTextureCompositor}
+   */
+  synchronized IBakedModel getSolid(ResourceLocation texture, IModelState state, VertexFormat format,
+      Function<ResourceLocation, TextureAtlasSprite> bakedTextureGetter) {
+    ++requests;
+    solidModel();
+    ImmutableMap<String, String> textures = ImmutableMap.of("all", texture.toString());
+    return models.computeIfAbsent(Arrays.asList(textures, state, format),
+        key -> new LazyModel(true, textures, state, format, bakedTextureGetter));
+  }
+
+  private synchronized IBakedModel bake(LazyModel model) {
+    long start = System.nanoTime();
+    IModel finalModel = (model.solid ? solidModel() : baseModel()).retexture(model.textures);
+    IBakedModel result = finalModel.bake(model.state, model.format, model.bakedTextureGetter);
+    bakeNanos += System.nanoTime() - start;
+    ++baked;
+    return result;
+  }
+
+  /**
+   * Baked on first access, from the render thread or a chunk builder
+   */
+  private final class LazyModel implements IBakedModel {
+    final boolean solid;
+    final ImmutableMap<String, String> textures;
+    final IModelState state;
+    final VertexFormat format;
+    final Function<ResourceLocation, TextureAtlasSprite> bakedTextureGetter;
+    private volatile IBakedModel delegate;
+
+    LazyModel(boolean solid, ImmutableMap<String, String> textures, IModelState state, VertexFormat format,
+        Function<ResourceLocation, TextureAtlasSprite> bakedTextureGetter) {
+      this.solid = solid;
+      this.textures = textures;
+      this.state = state;
+      this.format = format;
+      this.bakedTextureGetter = bakedTextureGetter;
+    }
+
+    private IBakedModel delegate() {
+      IBakedModel result = delegate;
+      if (result == null) {
+        synchronized (this) {
+          result = delegate;
+          if (result == null)
+            delegate = result = bake(this);
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public List<BakedQuad> getQuads(@Nullable IBlockState state, @Nullable EnumFacing side, long rand) {
+      return delegate().getQuads(state, side, rand);
+    }
+
+    @Override
+    public boolean isAmbientOcclusion() {
+      return delegate().isAmbientOcclusion();
+    }
+
+    @Override
+    public boolean isAmbientOcclusion(IBlockState state) {
+      return delegate().isAmbientOcclusion(state);
+    }
+
+    @Override
+    public boolean isGui3d() {
+      return delegate().isGui3d();
+    }
+
+    @Override
+    public boolean isBuiltInRenderer() {
+      return delegate().isBuiltInRenderer();
+    }
+
+    @Override
+    public TextureAtlasSprite getParticleTexture() {
+      return delegate().getParticleTexture();
+    }
+
+    @Override
+    public ItemCameraTransforms getItemCameraTransforms() {
+      return delegate().getItemCameraTransforms();
+    }
+
+    @Override
+    public ItemOverrideList getOverrides() {
+      return delegate().getOverrides();
+    }
+
+    @Override
+    public Pair<? extends IBakedModel, Matrix4f> handlePerspective(ItemCameraTransforms.TransformType cameraTransformType) {
+      return delegate().handlePerspective(cameraTransformType);
+    }
+  }
+
+}
@@ -15,6 +15,7 @@ public class UBOreModelLoader implements ICustomModelLoader {
 
   @Override
   public void onResourceManagerReload(IResourceManager resourceManager) {
+    UBOreModelCache.INSTANCE.clear();
   }
 
   @Override
@@ -8,12 +8,10 @@ import exterminatorjeff.undergroundbiomes.intermod.DropsRegistry;
 import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
 import net.minecraft.block.state.BlockStateContainer;
 import net.minecraft.block.state.IBlockState;
-import net.minecraft.entity.Entity;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.NonNullList;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.Explosion;
 import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 import net.minecraft.entity.monster.EntitySilverfish;
@@ -111,13 +109,13 @@ public class IgneousMonsterStone extends UBStone {
   }
 
   @Override
-  public float getBlockHardness(IBlockState state, World worldIn, BlockPos pos) {
-    return getBaseHardness() * state.getValue(IGNEOUS_VARIANT_PROPERTY).getHardness();
+  protected float getVariantHardness(IBlockState state) {
+    return state.getValue(IGNEOUS_VARIANT_PROPERTY).getHardness();
   }
 
   @Override
-  public float getExplosionResistance(World world, BlockPos pos, Entity exploder, Explosion explosion) {
-    return getBaseResistance() * world.getBlockState(pos).getValue(IGNEOUS_VARIANT_PROPERTY).getResistance();
+  protected float getVariantResistance(IBlockState state) {
+    return state.getValue(IGNEOUS_VARIANT_PROPERTY).getResistance();
   }
 
   @Override
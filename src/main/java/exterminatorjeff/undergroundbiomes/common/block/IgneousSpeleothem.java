@@ -7,7 +7,6 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.IBlockAccess;
 import java.util.Random;
-import net.minecraft.block.properties.PropertyEnum;
 import net.minecraft.block.state.BlockFaceShape;
 import net.minecraft.block.state.BlockStateContainer;
 import net.minecraft.entity.EntityLivingBase;
@@ -16,7 +15,6 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.world.World;
-import vazkii.arl.block.BlockMetaVariants.EnumBase;
 import static exterminatorjeff.undergroundbiomes.api.enums.IgneousVariant.*;
 import java.util.List;
 import java.util.ArrayList;
@@ -25,9 +23,8 @@ import net.minecraft.util.NonNullList;
 /**
  * @author CurtisA, LouisDB
  */
-public class IgneousSpeleothem extends IgneousStone {
+public class IgneousSpeleothem extends IgneousStone implements UBSpeleothem {
   public static final String internal_name = "igneous_speleothem";
-  public static PropertyEnum<EnumSize> SIZE = PropertyEnum.create("size", EnumSize.class);
 
   public IgneousSpeleothem() {
     super();
@@ -52,10 +49,7 @@ public class IgneousSpeleothem extends IgneousStone {
 
   @Override
   public IBlockState getActualState(final IBlockState state, final IBlockAccess worldIn, final BlockPos pos) {
-    EnumSize size = EnumSize.values()[Math.max(0, getBearing(worldIn, pos) - 1)];
-    if (isCenter(worldIn, pos))
-      size = EnumSize.medium;
-    return state.withProperty(SIZE, size);
+    return state.withProperty(SIZE, getActualSize(worldIn, pos));
   }
 
   @Override
@@ -87,14 +81,12 @@ public class IgneousSpeleothem extends IgneousStone {
   @Override
   public void onBlockPlacedBy(World worldIn, BlockPos pos, IBlockState state, EntityLivingBase placer,
       ItemStack stack) {
-    EnumSize size = EnumSize.values()[Math.max(0, getBearing(worldIn, pos) - 1)];
-    worldIn.setBlockState(pos, state.withProperty(SIZE, size));
+    worldIn.setBlockState(pos, state.withProperty(SIZE, getPlacedSize(worldIn, pos)));
   }
 
   @Override
   public void neighborChanged(IBlockState state, World worldIn, BlockPos pos, Block blockIn, BlockPos fromPos) {
-    int size = state.getValue(SIZE).strength;
-    if (getBearing(worldIn, pos) < size + 1) {
+    if (isUnsupported(state, worldIn, pos)) {
       worldIn.playEvent(2001, pos, Block.getStateId(worldIn.getBlockState(pos)));
       dropBlockAsItem(worldIn, pos, state, 0);
       worldIn.setBlockToAir(pos);
@@ -127,29 +119,6 @@ public class IgneousSpeleothem extends IgneousStone {
     return false;
   }
 
-  private int getBearing(IBlockAccess world, BlockPos pos) {
-    return Math.max(getStrength(world, pos.down()), getStrength(world, pos.up()));
-  }
-
-  private boolean isCenter(IBlockAccess world, BlockPos pos) {
-    return isThis(world, pos.down()) && isThis(world, pos.up());
-  }
-
-  private boolean isThis(IBlockAccess world, BlockPos pos) {
-    return world.getBlockState(pos).getBlock() instanceof IgneousSpeleothem;
-  }
-
-  private int getStrength(IBlockAccess world, BlockPos pos) {
-    IBlockState state = world.getBlockState(pos);
-    if (state.getBlock().isFullBlock(state))
-      return 3;
-
-    if (state.getPropertyKeys().contains(SIZE))
-      return state.getValue(SIZE).strength;
-
-    return 0;
-  }
-
   @Override
   public AxisAlignedBB getBoundingBox(IBlockState state, IBlockAccess source, BlockPos pos) {
     return state.getValue(SIZE).aabb;
@@ -185,24 +154,4 @@ public class IgneousSpeleothem extends IgneousStone {
   public boolean canPlaceTorchOnTop(IBlockState state, IBlockAccess world, BlockPos pos) {
     return true;
   }
-
-  public static enum EnumSize implements EnumBase {
-
-    small(0, 2), medium(1, 4), big(2, 8);
-
-    private EnumSize(int strength, int width) {
-      this.strength = strength;
-
-      float pad = ((float) ((16 - width) / 2) / 16F);
-      aabb = new AxisAlignedBB(pad, 0F, pad, 1F - pad, 1F, 1F - pad);
-    }
-
-    @Override
-    public String getName() {
-      return this.name();
-    }
-
-    public final int strength;
-    public final AxisAlignedBB aabb;
-  }
 }
@@ -165,7 +165,7 @@ public class SedimentaryGravel extends SedimentaryStone {
   @Override
   public void getDrops(NonNullList<ItemStack> stacks, IBlockAccess world, BlockPos pos, IBlockState state,
       int fortune) {
-    Item gravelBlock = this.getItemDropped(state, new Random(), fortune);
+    Item gravelBlock = this.getItemDropped(state, RANDOM, fortune);
     ItemStack itemStack = null;
     if (gravelBlock == itemBlock) {
       int meta = state.getBlock().getMetaFromState(state);
@@ -173,9 +173,8 @@ public class SedimentaryGravel extends SedimentaryStone {
     } else {
       itemStack = new ItemStack(gravelBlock, 1);
     }
-    List<ItemStack> result = new ArrayList<ItemStack>();
-    result.add(itemStack);
-    DropsRegistry.INSTANCE.addDrops(result, this, world, pos, state, fortune);
+    stacks.add(itemStack);
+    DropsRegistry.INSTANCE.addDrops(stacks, this, world, pos, state, fortune);
   }
 
   @Override
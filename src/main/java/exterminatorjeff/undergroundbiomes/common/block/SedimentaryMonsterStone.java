@@ -7,10 +7,8 @@ import exterminatorjeff.undergroundbiomes.api.enums.UBStoneType;
 import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
 import net.minecraft.block.state.BlockStateContainer;
 import net.minecraft.block.state.IBlockState;
-import net.minecraft.entity.Entity;
 import net.minecraft.item.Item;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.Explosion;
 import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 import net.minecraft.entity.monster.EntitySilverfish;
@@ -102,13 +100,13 @@ public class SedimentaryMonsterStone extends UBStone {
   }
 
   @Override
-  public float getBlockHardness(IBlockState state, World worldIn, BlockPos pos) {
-    return getBaseHardness() * state.getValue(SEDIMENTARY_VARIANT_PROPERTY).getHardness();
+  protected float getVariantHardness(IBlockState state) {
+    return state.getValue(SEDIMENTARY_VARIANT_PROPERTY).getHardness();
   }
 
   @Override
-  public float getExplosionResistance(World world, BlockPos pos, Entity exploder, Explosion explosion) {
-    return getBaseResistance() * world.getBlockState(pos).getValue(SEDIMENTARY_VARIANT_PROPERTY).getResistance();
+  protected float getVariantResistance(IBlockState state) {
+    return state.getValue(SEDIMENTARY_VARIANT_PROPERTY).getResistance();
   }
 
   @Override
@@ -2,6 +2,7 @@ package exterminatorjeff.undergroundbiomes.common.block;
 
 import exterminatorjeff.undergroundbiomes.api.API;
 import exterminatorjeff.undergroundbiomes.api.common.IUBOreConfig;
+import exterminatorjeff.undergroundbiomes.client.OreTextureCompositor;
 import exterminatorjeff.undergroundbiomes.client.UBCreativeTab;
 import exterminatorjeff.undergroundbiomes.common.UBSubBlock;
 import net.minecraft.block.Block;
@@ -96,6 +97,8 @@ public abstract class UBOre extends Block implements UBSubBlock {
   @SideOnly(Side.CLIENT)
   @Override
   public BlockRenderLayer getRenderLayer() {
+    if (OreTextureCompositor.INSTANCE.isSolid(this))
+      return BlockRenderLayer.SOLID;
     if (config.hasAlphaOverlay())
       return BlockRenderLayer.TRANSLUCENT;
     else
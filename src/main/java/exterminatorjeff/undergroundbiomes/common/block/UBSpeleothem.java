@@ -0,0 +1,111 @@
+package exterminatorjeff.undergroundbiomes.common.block;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.properties.PropertyEnum;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.World;
+import vazkii.arl.block.BlockMetaVariants.EnumBase;
+
+/**
+ * Common implementation of the igneous, metamorphic and sedimentary
+ * speleothems.<br>
+ * <br>
+ * The size isn't saved, the metadata is taken by the variant. It is resolved
+ * from the blocks above and below only, read once each, through a table
+ * computed for every pair of neighbours.
+ */
+public interface UBSpeleothem {
+
+  PropertyEnum<EnumSize> SIZE = PropertyEnum.create("size", EnumSize.class);
+
+  /**
+   * Neighbour strength in the low bits, {@link #SAME} if it is this block
+   */
+  int SAME = 4;
+
+  /**
+   * Size for each pair of neighbours, below then above
+   */
+  EnumSize[] SIZES = EnumSize.sizes();
+
+  /**
+   * Speleothems of another stone type don't hold this one.
+   *
+   * @return 3 for a full block, the strength of this speleothem, 0 otherwise
+   */
+  default int neighbour(IBlockAccess world, BlockPos pos) {
+    IBlockState state = world.getBlockState(pos);
+    Block block = state.getBlock();
+    if (block.isFullBlock(state))
+      return 3;
+    if (block == this)
+      return state.getValue(SIZE).strength | SAME;
+    return 0;
+  }
+
+  default EnumSize getActualSize(IBlockAccess world, BlockPos pos) {
+    return SIZES[neighbour(world, pos.down()) << 3 | neighbour(world, pos.up())];
+  }
+
+  default int getBearing(IBlockAccess world, BlockPos pos) {
+    return Math.max(neighbour(world, pos.down()) & 3, neighbour(world, pos.up()) & 3);
+  }
+
+  /**
+   * Size of a speleothem just placed, bigger the stronger its support
+   */
+  default EnumSize getPlacedSize(World world, BlockPos pos) {
+    return EnumSize.VALUES[Math.max(0, getBearing(world, pos) - 1)];
+  }
+
+  /**
+   * @return True if the speleothem is no longer held
+   */
+  default boolean isUnsupported(IBlockState state, World world, BlockPos pos) {
+    return getBearing(world, pos) < state.getValue(SIZE).strength + 1;
+  }
+
+  enum EnumSize implements EnumBase {
+
+    small(0, 2), medium(1, 4), big(2, 8);
+
+    // values() clones the array on each call
+    static final EnumSize[] VALUES = values();
+
+    EnumSize(int strength, int width) {
+      this.strength = strength;
+
+      float pad = ((float) ((16 - width) / 2) / 16F);
+      aabb = new AxisAlignedBB(pad, 0F, pad, 1F - pad, 1F, 1F - pad);
+    }
+
+    @Override
+    public String getName() {
+      return this.name();
+    }
+
+    public final int strength;
+    public final AxisAlignedBB aabb;
+
+    /**
+     * Medium between two speleothems of the same block, else by the strongest
+     * support
+     */
+    private static EnumSize[] sizes() {
+      EnumSize[] result = new EnumSize[64];
+      for (int below = 0; below < 8; ++below) {
+        for (int above = 0; above < 8; ++above) {
+          if ((below & SAME) != 0 && (above & SAME) != 0)
+            result[below << 3 | above] = medium;
+          else
+            result[below << 3 | above] = VALUES[Math.max(0, Math.max(below & 3, above & 3) - 1)];
+        }
+      }
+      return result;
+    }
+  }
+
+}
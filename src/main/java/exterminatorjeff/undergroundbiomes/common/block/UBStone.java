@@ -2,6 +2,7 @@ package exterminatorjeff.undergroundbiomes.common.block;
 
 import com.google.common.base.Predicate;
 import exterminatorjeff.undergroundbiomes.api.ModInfo;
+import exterminatorjeff.undergroundbiomes.api.common.DropSource;
 import exterminatorjeff.undergroundbiomes.api.common.UBBlock;
 import exterminatorjeff.undergroundbiomes.client.UBCreativeTab;
 import exterminatorjeff.undergroundbiomes.config.UBConfig;
@@ -24,7 +25,6 @@ import net.minecraft.world.World;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -37,6 +37,15 @@ public abstract class UBStone extends Block implements UBBlock {
   protected static final float COBBLE_HARDNESS_MODIFIER = 1.333F;
 
   protected ItemBlock itemBlock;
+  /**
+   * Hardness then resistance of each variant, null until used or after a
+   * modifier changed
+   */
+  private volatile float[][] strengths;
+  /**
+   * Rare drops sources, compiled again when the {@link DropsRegistry} changed
+   */
+  private volatile CompiledDrops drops = new CompiledDrops(null, -1);
 
   public UBStone() {
     super(Material.ROCK);
@@ -46,8 +55,14 @@ public abstract class UBStone extends Block implements UBBlock {
     setHarvestLevel("pickaxe", 0);
     setTranslationKey(this.getInternalName());
     setRegistryName(ModInfo.MODID, this.getInternalName());
-    ((UBConfig) (UBConfig.SPECIFIC)).hardnessModifier.addTracker(hardness -> setHardness(hardness));
-    ((UBConfig) (UBConfig.SPECIFIC)).resistanceModifier.addTracker(resistance -> setResistance(resistance));
+    ((UBConfig) (UBConfig.SPECIFIC)).hardnessModifier.addTracker(hardness -> {
+      setHardness(hardness);
+      strengths = null;
+    });
+    ((UBConfig) (UBConfig.SPECIFIC)).resistanceModifier.addTracker(resistance -> {
+      setResistance(resistance);
+      strengths = null;
+    });
     itemBlock = new UBItemBlockStone(this);
   }
 
@@ -78,9 +93,46 @@ public abstract class UBStone extends Block implements UBBlock {
     return blockResistance / 5.0F;
   }
 
-  public abstract float getBlockHardness(IBlockState blockState, World worldIn, BlockPos pos);
+  /**
+   * @return The hardness multiplier of the variant of the state
+   */
+  protected abstract float getVariantHardness(IBlockState state);
+
+  /**
+   * @return The resistance multiplier of the variant of the state
+   */
+  protected abstract float getVariantResistance(IBlockState state);
+
+  /**
+   * Indexed by the metadata, which only holds the variant. Also used by the
+   * slabs, their states share the variant property.
+   */
+  private float[][] strengths() {
+    float[][] result = strengths;
+    if (result == null) {
+      result = new float[2][16];
+      for (IBlockState state : blockState.getValidStates()) {
+        int meta = getMetaFromState(state) & 15;
+        result[0][meta] = getBaseHardness() * getVariantHardness(state);
+        result[1][meta] = getBaseResistance() * getVariantResistance(state);
+      }
+      strengths = result;
+    }
+    return result;
+  }
 
-  public abstract float getExplosionResistance(World world, BlockPos pos, Entity exploder, Explosion explosion);
+  @Override
+  public float getBlockHardness(IBlockState blockState, World worldIn, BlockPos pos) {
+    return strengths()[0][getMetaFromState(blockState) & 15];
+  }
+
+  /**
+   * Forge doesn't give the state, the explosion already looked it up.
+   */
+  @Override
+  public float getExplosionResistance(World world, BlockPos pos, Entity exploder, Explosion explosion) {
+    return strengths()[1][getMetaFromState(world.getBlockState(pos)) & 15];
+  }
 
   @Override
   public int quantityDropped(IBlockState state, int fortune, Random random) {
@@ -116,21 +168,37 @@ public abstract class UBStone extends Block implements UBBlock {
     return getMetaFromState(state);
   }
 
-  @SuppressWarnings("deprecation")
-  @Override
-  public List<ItemStack> getDrops(IBlockAccess world, BlockPos pos, IBlockState state, int fortune) {
-    List<ItemStack> drops = super.getDrops(world, pos, state, fortune);
-    DropsRegistry.INSTANCE.addDrops(drops, this, world, pos, state, fortune);
-    return drops;
-  }
-
   @Override
   public void getDrops(NonNullList<ItemStack> stacks, IBlockAccess world, BlockPos pos, IBlockState state,
       int fortune) {
-    NonNullList<ItemStack> drops = NonNullList.create();
-    super.getDrops(drops, world, pos, state, fortune);
-    DropsRegistry.INSTANCE.addDrops(drops, this, world, pos, state, fortune);
     super.getDrops(stacks, world, pos, state, fortune);
+    DropsRegistry.INSTANCE.addDrops(stacks, this, world, pos, state, fortune);
+  }
+
+  /**
+   * Thread safe, the sources are only compiled after a source was registered.
+   */
+  public DropSource[] getDropSources() {
+    int version = DropsRegistry.INSTANCE.getVersion();
+    CompiledDrops current = drops;
+    if (current.version != version) {
+      current = new CompiledDrops(DropsRegistry.INSTANCE.compileSourcesFor(this), version);
+      drops = current;
+    }
+    return current.sources;
+  }
+
+  /**
+   * Sources and the registry version they were compiled from, swapped at once
+   */
+  private static final class CompiledDrops {
+    final DropSource[] sources;
+    final int version;
+
+    CompiledDrops(DropSource[] sources, int version) {
+      this.sources = sources;
+      this.version = version;
+    }
   }
 
   @Override
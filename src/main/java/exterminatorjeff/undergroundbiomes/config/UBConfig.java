@@ -78,9 +78,22 @@ public class UBConfig implements UBSettings {
       "ReplaceSandExcludedBiomes");
   public final StringSetting replaceGravelExcludedBiomes = new StringSetting(CATEGORY_SPECIFIC,
       "ReplaceGravelExcludedBiomes");
+  public final BooleanSetting legacyStoneReplacement = new BooleanSetting(CATEGORY_GENERATION,
+      "LegacyStoneReplacement");
+  public final BooleanSetting strictStrataVariation = new BooleanSetting(CATEGORY_GENERATION,
+      "StrictStrataVariation");
+  public final IntegerSetting biomeCacheSize = new IntegerSetting(CATEGORY_GENERATION, "BiomeCacheSize");
+  public final IntegerSetting biomeTileCacheSize = new IntegerSetting(CATEGORY_GENERATION, "BiomeTileCacheSize");
+  public final IntegerSetting replacementThreads = new IntegerSetting(CATEGORY_GENERATION, "ReplacementThreads");
+  public final IntegerSetting replacementTickBudget = new IntegerSetting(CATEGORY_GENERATION, "ReplacementTickBudget");
+  public final BooleanSetting primerStoneReplacement = new BooleanSetting(CATEGORY_GENERATION, "PrimerStoneReplacement");
+  public final BooleanSetting retrogen = new BooleanSetting(CATEGORY_GENERATION, "Retrogen");
+  public final IntegerSetting retrogenChunksPerTick = new IntegerSetting(CATEGORY_GENERATION, "RetrogenChunksPerTick");
+  public final IntegerSetting retrogenTickBudget = new IntegerSetting(CATEGORY_GENERATION, "RetrogenTickBudget");
 
   private static final String CATEGORY_VISUAL = "Visual";
   public final BooleanSetting plainSlabTextures = new BooleanSetting(CATEGORY_VISUAL, "PlainSlabTextures");
+  public final BooleanSetting compositeOreTextures = new BooleanSetting(CATEGORY_VISUAL, "CompositeOreTextures");
 
   private static final String CATEGORY_SPECIFIC = "Specific";
   public final BooleanSetting buttonsOn = new BooleanSetting(CATEGORY_SPECIFIC, "UndergroundBiomesButtons");
@@ -197,8 +210,37 @@ public class UBConfig implements UBSettings {
         "Disable biomes you don't want sand to be replaced in. Needs to be in the minecraft:ocean format. Eg. minecraft:ocean, biomesoplenty:cold_desert, minecraft:cold_beach");
     replaceGravelExcludedBiomes.initProperty(configuration, "biomesoplenty:cold_desert",
         "Same as replaceSandExcludedBiomes but for gravel");
+    legacyStoneReplacement.initProperty(configuration, false,
+        "Use the old block by block checks instead of the precompiled replacement table\n"
+            + "Slower, only useful to compare generated chunks");
+    strictStrataVariation.initProperty(configuration, true,
+        "Compute the strata height variation of every column\n"
+            + "If false it is sampled every 4 blocks and interpolated, faster but causes seams in existing worlds");
+    biomeCacheSize.initProperty(configuration, 1024,
+        "Number of chunks per dimension whose underground biomes are kept in memory (256 bytes each)");
+    biomeTileCacheSize.initProperty(configuration, 64,
+        "Number of 64x64 areas per dimension whose underground biomes are kept for strata column queries\n"
+            + "(4 KB each), the least recently used one is dropped first");
+    replacementThreads.initProperty(configuration, 0,
+        "Number of threads computing the stone replacement away from the server thread, blocks are still\n"
+            + "written by the server thread on the next tick. 0 replaces synchronously during chunk population");
+    replacementTickBudget.initProperty(configuration, 0,
+        "Milliseconds per server tick spent replacing the stones of newly populated chunks, nearest to players\n"
+            + "first. Smooths generation spikes, e.g. when flying with elytra. 0 replaces during chunk population");
+    primerStoneReplacement.initProperty(configuration, false,
+        "Replace stones while the chunk terrain is generated, after caves and ravines but before ores and decorations.\n"
+            + "Population then only fixes up what decorations placed. Needs a generator with ravines, like the overworld.\n"
+            + "Blocks next to caves are left to population so springs still find stone around them, springs whose\n"
+            + "cave is in the neighbouring chunk may be lost");
+    retrogen.initProperty(configuration, false,
+        "Replace the stones of chunks generated before UB was installed (or with other UB generation settings)\n"
+            + "when they are loaded. Warning: also replaces stone, cobblestone, sand... placed by players");
+    retrogenChunksPerTick.initProperty(configuration, 4, "Maximum number of chunks retrogenerated per server tick");
+    retrogenTickBudget.initProperty(configuration, 5, "Maximum milliseconds per server tick spent on retrogen");
 
     plainSlabTextures.initProperty(configuration, false, "Use normal stone textures for slabs");
+    compositeOreTextures.initProperty(configuration, false,
+        "Merge stone and overlay into one texture so ores render as solid blocks, not for colored or animated overlays");
 
     buttonsOn.initProperty(configuration, true, "Provide buttons for Underground Biomes blocks");
     buttonsTypes.initProperty(configuration, 7,
@@ -286,8 +328,19 @@ public class UBConfig implements UBSettings {
     excludedDimensions.setValue(copied.excludedDimensions.getValue());
     dimensionSpecificSeeds.setValue(copied.dimensionSpecificSeeds());
     ubifyVillages.setValue(copied.ubifyVillages());
+    legacyStoneReplacement.setValue(copied.legacyStoneReplacement());
+    strictStrataVariation.setValue(copied.strictStrataVariation());
+    biomeCacheSize.setValue(copied.biomeCacheSize());
+    biomeTileCacheSize.setValue(copied.biomeTileCacheSize());
+    replacementThreads.setValue(copied.replacementThreads());
+    replacementTickBudget.setValue(copied.replacementTickBudget());
+    primerStoneReplacement.setValue(copied.primerStoneReplacement());
+    retrogen.setValue(copied.retrogen());
+    retrogenChunksPerTick.setValue(copied.retrogenChunksPerTick());
+    retrogenTickBudget.setValue(copied.retrogenTickBudget());
 
     plainSlabTextures.setValue(copied.alternativeSlabTextures());
+    compositeOreTextures.setValue(copied.compositeOreTextures());
 
     buttonsOn.setValue(copied.buttonsOn());
     buttonsTypes.setValue(copied.buttonsTypes.getValue());
@@ -502,6 +555,56 @@ public class UBConfig implements UBSettings {
   public boolean replaceSpeleothems() {
     return replaceSpeleothems.getValue();
   }
+
+  @Override
+  public boolean legacyStoneReplacement() {
+    return legacyStoneReplacement.getValue();
+  }
+
+  @Override
+  public boolean strictStrataVariation() {
+    return strictStrataVariation.getValue();
+  }
+
+  @Override
+  public int biomeCacheSize() {
+    return biomeCacheSize.getValue();
+  }
+
+  @Override
+  public int biomeTileCacheSize() {
+    return biomeTileCacheSize.getValue();
+  }
+
+  @Override
+  public int replacementThreads() {
+    return replacementThreads.getValue();
+  }
+
+  @Override
+  public int replacementTickBudget() {
+    return replacementTickBudget.getValue();
+  }
+
+  @Override
+  public boolean primerStoneReplacement() {
+    return primerStoneReplacement.getValue();
+  }
+
+  @Override
+  public boolean retrogen() {
+    return retrogen.getValue();
+  }
+
+  @Override
+  public int retrogenChunksPerTick() {
+    return retrogenChunksPerTick.getValue();
+  }
+
+  @Override
+  public int retrogenTickBudget() {
+    return retrogenTickBudget.getValue();
+  }
   /*
    * Visual (Client only)
    */
@@ -511,6 +614,11 @@ public class UBConfig implements UBSettings {
     return plainSlabTextures.getValue();
   }
 
+  @Override
+  public boolean compositeOreTextures() {
+    return compositeOreTextures.getValue();
+  }
+
   /*
    * Specific
    */
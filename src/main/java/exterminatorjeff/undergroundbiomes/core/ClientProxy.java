@@ -1,7 +1,10 @@
 package exterminatorjeff.undergroundbiomes.core;
 
 import exterminatorjeff.undergroundbiomes.api.API;
+import exterminatorjeff.undergroundbiomes.client.OreTextureCompositor;
+import exterminatorjeff.undergroundbiomes.client.OverlaySprites;
 import exterminatorjeff.undergroundbiomes.client.UBCreativeTab;
+import exterminatorjeff.undergroundbiomes.client.UBOreModelCache;
 import exterminatorjeff.undergroundbiomes.client.UBOreModelLoader;
 import exterminatorjeff.undergroundbiomes.client.UBStateMappers;
 import exterminatorjeff.undergroundbiomes.common.block.IgneousSpeleothem;
@@ -37,8 +40,10 @@ public final class ClientProxy extends CommonProxy {
   public void preInit(FMLPreInitializationEvent e) {
     super.preInit(e);
 
-    MinecraftForge.EVENT_BUS.register(OresRegistry.INSTANCE);
+    MinecraftForge.EVENT_BUS.register(OverlaySprites.INSTANCE);
     ModelLoaderRegistry.registerLoader(new UBOreModelLoader());
+    MinecraftForge.EVENT_BUS.register(UBOreModelCache.INSTANCE);
+    MinecraftForge.EVENT_BUS.register(OreTextureCompositor.INSTANCE);
   }
 
   @Override
@@ -112,12 +112,16 @@ import net.minecraft.world.WorldServer;
 import net.minecraftforge.client.event.ModelRegistryEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.Loader;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerAboutToStartEvent;
+import net.minecraftforge.fml.common.event.FMLServerStartedEvent;
+import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
 import net.minecraftforge.fml.common.event.FMLServerStoppedEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.registry.GameRegistry;
 import net.minecraftforge.oredict.OreDictionary;
@@ -196,6 +200,18 @@ public class CommonProxy {
     dimensionManager.refreshManagers();
   }
 
+  public void serverStarting(FMLServerStartingEvent event) {
+    event.registerServerCommand(new RetrogenCommand(dimensionManager));
+  }
+
+  public void serverStarted(FMLServerStartedEvent event) {
+    dimensionManager.convertRegionsIfRequested(FMLCommonHandler.instance().getMinecraftServerInstance());
+  }
+
+  public void serverStopping(FMLServerStoppingEvent event) {
+    dimensionManager.onServerStopping();
+  }
+
   public void onServerStopped(FMLServerStoppedEvent event) {
     // for some reason onWorldLoad is running before any of the ServerStartxxx
     // events
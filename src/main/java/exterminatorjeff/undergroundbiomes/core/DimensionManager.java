@@ -13,16 +13,20 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.dedicated.PropertyManager;
+import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.ChunkPrimer;
+import net.minecraft.world.gen.MapGenBase;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.terraingen.BiomeEvent;
 import net.minecraftforge.event.terraingen.InitMapGenEvent;
 import net.minecraftforge.event.terraingen.OreGenEvent;
-import net.minecraftforge.event.terraingen.PopulateChunkEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -30,7 +34,7 @@ import java.util.HashMap;
  */
 public class DimensionManager implements UBDimensionalStrataColumnProvider {
   public HashMap<Integer, WorldGenManager> managers = new HashMap<Integer, WorldGenManager>();
-  private boolean villageRegistered = false;
+  private boolean terrainGenRegistered = false;
   private boolean oreRegistered = false;
   private ConfigManager configManager;
 
@@ -39,23 +43,27 @@ public class DimensionManager implements UBDimensionalStrataColumnProvider {
   }
 
   public void refreshManagers() {
+    unregisterManagers();
     managers = new HashMap<Integer, WorldGenManager>();
 
-    if (UBConfig.SPECIFIC.ubifyVillages() && !villageRegistered) {
+    boolean terrainGen = UBConfig.SPECIFIC.ubifyVillages() || UBConfig.SPECIFIC.primerStoneReplacement();
+    if (terrainGen && !terrainGenRegistered) {
       MinecraftForge.TERRAIN_GEN_BUS.register(this);
-      villageRegistered = true;
+      terrainGenRegistered = true;
     }
-    if (!UBConfig.SPECIFIC.ubifyVillages() && villageRegistered) {
+    if (!terrainGen && terrainGenRegistered) {
       MinecraftForge.TERRAIN_GEN_BUS.unregister(this);
-      villageRegistered = false;
+      terrainGenRegistered = false;
     }
 
-    if (UBConfig.SPECIFIC.disableVanillaStoneVariants() && !oreRegistered) {
+    // Vanilla stone variants are denied and decorator ores generated UBified
+    boolean oreGen = UBConfig.SPECIFIC.disableVanillaStoneVariants() || UBConfig.SPECIFIC.ubifyOres();
+    if (oreGen && !oreRegistered) {
       MinecraftForge.ORE_GEN_BUS.register(this);
       oreRegistered = true;
     }
 
-    if (!UBConfig.SPECIFIC.disableVanillaStoneVariants() && oreRegistered) {
+    if (!oreGen && oreRegistered) {
       MinecraftForge.ORE_GEN_BUS.unregister(this);
       oreRegistered = false;
     }
@@ -100,13 +108,6 @@ public class DimensionManager implements UBDimensionalStrataColumnProvider {
     if (target != null) target.onWorldLoad(event);
   }
 
-  @SubscribeEvent
-  public void onPopulateChunkPost(PopulateChunkEvent.Post event) {
-    int dimension = event.getWorld().provider.getDimension();
-    WorldGenManager target = managers.get(dimension);
-    if (target != null) target.onPopulateChunkPost(event);
-  }
-
   @SubscribeEvent
   public void onGenerateMinable(OreGenEvent.GenerateMinable event) {
     int dimension = event.getWorld().provider.getDimension();
@@ -123,16 +124,83 @@ public class DimensionManager implements UBDimensionalStrataColumnProvider {
 
   @SubscribeEvent
   public void initMapGen(InitMapGenEvent event) {
+    if (event.getType() == InitMapGenEvent.EventType.RAVINE && UBConfig.SPECIFIC.primerStoneReplacement()) {
+      // Last generator writing into the chunk primer
+      event.setNewGen(new PrimerReplacement(event.getNewGen()));
+      return;
+    }
+    if (!UBConfig.SPECIFIC.ubifyVillages()) return;
     // this goes to the overworld since there's no ID
     WorldGenManager target = managers.get(0);
     if (target != null) target.initMapGen(event);
 
   }
 
+  /**
+   * Runs the wrapped generator then the stone replacement of the dimension on
+   * the chunk primer.
+   */
+  private class PrimerReplacement extends MapGenBase {
+    private final MapGenBase wrapped;
+
+    PrimerReplacement(MapGenBase wrapped) {
+      this.wrapped = wrapped;
+    }
+
+    @Override
+    public void generate(World world, int x, int z, ChunkPrimer primer) {
+      wrapped.generate(world, x, z, primer);
+      WorldGenManager target = managers.get(world.provider.getDimension());
+      if (target != null) target.onPrimerGenerated(world, x, z, primer);
+    }
+  }
+
+  /**
+   * Conversion of the region files of UBified dimensions before players can
+   * join, requested with JVM properties:
+   * <ul>
+   * <li>undergroundbiomes.convert: * or comma-separated dimension IDs</li>
+   * <li>undergroundbiomes.convert.threads: all cores by default</li>
+   * <li>undergroundbiomes.convert.stop: true to stop the server once done</li>
+   * </ul>
+   */
+  public void convertRegionsIfRequested(MinecraftServer server) {
+    String requested = System.getProperty("undergroundbiomes.convert");
+    if (requested == null)
+      return;
+    int threads = Integer.getInteger("undergroundbiomes.convert.threads", Runtime.getRuntime().availableProcessors());
+    for (Integer dimension : new ArrayList<>(managers.keySet())) {
+      if (!requested.trim().equals("*") && !Arrays.asList(requested.split(",")).contains(dimension.toString()))
+        continue;
+      // Loads the dimension if needed
+      server.getWorld(dimension);
+      managers.get(dimension).convertRegions(threads);
+    }
+    if (Boolean.getBoolean("undergroundbiomes.convert.stop"))
+      server.initiateShutdown();
+  }
+
+  /**
+   * Before the final save of the worlds
+   */
+  public void onServerStopping() {
+    managers.values().forEach(WorldGenManager::onServerStopping);
+  }
+
   public void clearWorldManagers() {
+    managers.values().forEach(WorldGenManager::onServerStopped);
+    WorldGenManager.onServerStoppedAll();
+    unregisterManagers();
     managers = new HashMap<Integer, WorldGenManager>();
   }
 
+  /**
+   * Managers of a previous server must not get ticks and events anymore
+   */
+  private void unregisterManagers() {
+    managers.values().forEach(MinecraftForge.EVENT_BUS::unregister);
+  }
+
   @Override
   public UBStrataColumnProvider ubStrataColumnProvider(int dimension) {
     WorldGenManager manager = this.managers.get(dimension);
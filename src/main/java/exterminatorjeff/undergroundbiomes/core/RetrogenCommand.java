@@ -0,0 +1,66 @@
+package exterminatorjeff.undergroundbiomes.core;
+
+import exterminatorjeff.undergroundbiomes.world.WorldGenManager;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin command displaying the retrogen progress of every UBified dimension.
+ */
+public final class RetrogenCommand extends CommandBase {
+
+  private final DimensionManager dimensionManager;
+
+  public RetrogenCommand(DimensionManager dimensionManager) {
+    this.dimensionManager = dimensionManager;
+  }
+
+  @Override
+  public String getName() {
+    return "ubretrogen";
+  }
+
+  @Override
+  public String getUsage(ICommandSender sender) {
+    return "/ubretrogen status";
+  }
+
+  @Override
+  public int getRequiredPermissionLevel() {
+    return 3;
+  }
+
+  @Override
+  public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+    if (args.length > 1 || (args.length == 1 && !args[0].equals("status")))
+      throw new WrongUsageException(getUsage(sender));
+    boolean any = false;
+    for (Map.Entry<Integer, WorldGenManager> entry : dimensionManager.managers.entrySet()) {
+      String status = entry.getValue().retrogenStatus();
+      if (status != null) {
+        sender.sendMessage(new TextComponentString("Dimension " + entry.getKey() + ": " + status));
+        any = true;
+      }
+    }
+    if (!any)
+      sender.sendMessage(new TextComponentString("Retrogen is disabled, see the Retrogen setting"));
+  }
+
+  @Override
+  public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args,
+      BlockPos targetPos) {
+    if (args.length == 1)
+      return getListOfStringsMatchingLastWord(args, "status");
+    return Collections.emptyList();
+  }
+
+}
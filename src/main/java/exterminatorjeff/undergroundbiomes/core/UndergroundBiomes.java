@@ -3,6 +3,7 @@ package exterminatorjeff.undergroundbiomes.core;
 import exterminatorjeff.undergroundbiomes.api.API;
 import exterminatorjeff.undergroundbiomes.api.ModInfo;
 import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
 import net.minecraft.block.Block;
 import net.minecraft.item.Item;
 import net.minecraft.item.crafting.IRecipe;
@@ -13,9 +14,13 @@ import net.minecraftforge.fml.common.Mod.EventHandler;
 import net.minecraftforge.fml.common.Mod.Instance;
 import net.minecraftforge.fml.common.SidedProxy;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLModIdMappingEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLServerStartedEvent;
+import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
 import net.minecraftforge.fml.common.event.FMLServerStoppedEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import net.minecraftforge.fml.common.eventhandler.EventPriority;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import org.apache.logging.log4j.Level;
@@ -93,10 +98,30 @@ public class UndergroundBiomes {
     LOGGER.info("Post-init done!");
   }
 
+  @EventHandler
+  public void serverStarting(FMLServerStartingEvent event) {
+    PROXY.serverStarting(event);
+  }
+
+  @EventHandler
+  public void serverStarted(FMLServerStartedEvent event) {
+    PROXY.serverStarted(event);
+  }
+
+  @EventHandler
+  public void serverStopping(FMLServerStoppingEvent event) {
+    PROXY.serverStopping(event);
+  }
+
   @EventHandler
   public void serverStopped(FMLServerStoppedEvent event) {
     PROXY.onServerStopped(event);
     LOGGER.info("Server Stopped");
   }
 
+  @EventHandler
+  public void idMapping(FMLModIdMappingEvent event) {
+    OresRegistry.INSTANCE.onIdMapping();
+  }
+
 }
@@ -31,20 +31,43 @@ public enum DropsRegistry implements UBDropsRegistry {
    * @see #getSourcesFor(Block)
    */
   private final Map<Block, List<DropSource>> dropsSources = new HashMap<>();
+  /**
+   * Increased on each new source, stones compile their sources again when it
+   * changed
+   */
+  private volatile int version = 0;
+
+  private static final DropSource[] NO_SOURCES = new DropSource[0];
 
-  private void addSourceFor(Block stone, DropSource source) {
+  private synchronized void addSourceFor(Block stone, DropSource source) {
     if (!dropsSources.containsKey(stone))
       dropsSources.put(stone, new ArrayList<>());
     dropsSources.get(stone).add(source);
+    ++version;
   }
 
-  private List<DropSource> getSourcesFor(Block stone) {
+  private synchronized List<DropSource> getSourcesFor(Block stone) {
     List<DropSource> sources = dropsSources.get(stone);
     if (sources == null)
       return Collections.emptyList();
     return sources;
   }
 
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * @return The sources of the stone as an array, see
+   *         {@link UBStone#getDropSources()}
+   */
+  public synchronized DropSource[] compileSourcesFor(Block stone) {
+    List<DropSource> sources = getSourcesFor(stone);
+    if (sources.isEmpty())
+      return NO_SOURCES;
+    return sources.toArray(new DropSource[0]);
+  }
+
   @Override
   public void registerDropSourceFor(Block stone, DropSource source) {
     addSourceFor(stone, source);
@@ -104,7 +127,12 @@ public enum DropsRegistry implements UBDropsRegistry {
    * @param fortune
    */
   public void addDrops(List<ItemStack> drops, Block stone, IBlockAccess world, BlockPos pos, IBlockState state, int fortune) {
-    for (DropSource source : getSourcesFor(stone))
+    if (!(stone instanceof UBStone)) {
+      for (DropSource source : getSourcesFor(stone))
+        source.addDrops(drops, (World) world, pos, state, fortune);
+      return;
+    }
+    for (DropSource source : ((UBStone) stone).getDropSources())
       source.addDrops(drops, (World) world, pos, state, fortune);
   }
 
@@ -2,6 +2,7 @@ package exterminatorjeff.undergroundbiomes.intermod;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
 import exterminatorjeff.undergroundbiomes.api.API;
 import exterminatorjeff.undergroundbiomes.api.ModInfo;
@@ -10,21 +11,25 @@ import exterminatorjeff.undergroundbiomes.api.common.UBModOreRegistrar;
 import net.minecraft.block.Block;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.fml.common.Loader;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.registries.IForgeRegistry;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.Level;
 
 import java.io.*;
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 public class ModOreRegistrar implements UBModOreRegistrar {
 
@@ -33,9 +38,13 @@ public class ModOreRegistrar implements UBModOreRegistrar {
   private HashMap<String, UBOreConfig> ores = new HashMap<>();
   private final Type jsonType = new TypeToken<ArrayList<UBOreConfig>>() {
   }.getType();
+  private final Gson gson = new Gson();
+  private final File manifestFile;
+  private int skipped = 0;
 
   public ModOreRegistrar(FMLPreInitializationEvent event) {
     this.directory = Paths.get(event.getModConfigurationDirectory().toString(), "undergroundbiomes", "ores").toFile();
+    this.manifestFile = Paths.get(event.getModConfigurationDirectory().toString(), "undergroundbiomes", "ores.manifest").toFile();
     try {
       Files.createDirectories(this.directory.toPath());
       createDefaults();
@@ -63,67 +72,67 @@ public class ModOreRegistrar implements UBModOreRegistrar {
   }
 
   private void createDefaults() {
-    writeDefaults(getMinecraftOres(), "minecraft.json");
-    writeDefaults(getNuclearcraftOres(), "nuclearcraft.json");
-    writeDefaults(getGrowthcraftOres(), "growthcraft.json");
-    writeDefaults(getActuallyAdditionsOres(), "actuallyadditions.json");
-    writeDefaults(getAppliedEnergisticsOres(), "appliedenergistics2.json");
-    writeDefaults(getBaseMetalsOres(), "basemetals.json");
-    writeDefaults(getBaseMineralsOres(), "baseminerals.json");
-    writeDefaults(getBiomesOPlentyOres(), "biomesoplenty.json");
-    writeDefaults(getBetterUndergroundOres(), "betterunderground.json");
-    writeDefaults(getDraconicEvolutionOres(), "draconicevolution.json");
-    writeDefaults(getEnderOreOres(), "enderore.json");
-    writeDefaults(getExtremeReactorsOres(), "extremereactors.json");
-    writeDefaults(getForestyOres(), "forestry.json");
-    writeDefaults(getImmersiveEngineeringOres(), "immersiveengineering.json");
-    writeDefaults(getIndustrialCraftOres(), "industrialcraft.json");
-    writeDefaults(getMekanismOres(), "mekanism.json");
-    writeDefaults(getModernMetalsOres(), "modernmetals.json");
-    writeDefaults(getRFToolsOres(), "rftools.json");
-    writeDefaults(getTechRebornOres(), "techreborn.json");
-    writeDefaults(getThermalFoundationOres(), "thermalfoundation.json");
-    writeDefaults(getThaumcraftOres(), "thaumcraft.json");
-    writeDefaults(getGeolosysOres(), "geolosys.json");
-    writeDefaults(getMysticalAgricultureOres(), "mysticalagriculture.json");
-    writeDefaults(getMatterOverdriveLegacyOres(), "matteroverdrivelegacy.json");
-    writeDefaults(getTaigaOres(), "taiga.json");
-    writeDefaults(getMetallurgy4Ores(), "metallurgy4.json");
-    writeDefaults(getProjectRedOres(), "projectred.json");
-    writeDefaults(getPoorMetalsOres(), "poormetals.json");
-    writeDefaults(getDenseMetalsOres(), "densemetals.json");
-    writeDefaults(getAstralSorceryOres(), "astralsorcery.json");
-    writeDefaults(getMysticalWorldOres(), "mysticalworld.json");
-    writeDefaults(getBiomeYoullGoOres(), "byg.json");
-    writeDefaults(getCandyWorldOres(), "candyworld.json");
-    writeDefaults(getCurioOres(), "curio.json");
-    writeDefaults(getBluePowerOres(), "bluepower.json");
-    writeDefaults(getWildnatureOres(), "wildnature.json");
-    writeDefaults(getIndustrialCraftClassicOres(), "ic2classic.json");
-    writeDefaults(getGrimpackOres(), "grimpack.json");
-    writeDefaults(getTreasure2Ores(), "treasure2.json");
-    writeDefaults(getWorldsRetoldOres(), "worldsretold.json");
-    writeDefaults(getScalingHealthOres(), "scalinghealth.json");
-    writeDefaults(getPyrotechOres(), "pyrotech.json");
-    writeDefaults(getMubbleOres(), "mubble.json");
-    writeDefaults(getMoGlowstoneOres(), "moglowstone.json");
-    writeDefaults(getFloricraftOres(), "floricraft.json");
-    writeDefaults(getDartcraftOres(), "dartcraftreloaded.json");
-    writeDefaults(getCustomIdeasOres(), "customideas.json");
-    writeDefaults(getStarWarsOres(), "starwars.json");
-    writeDefaults(getCommunityModOres(), "communitymod.json");
-    writeDefaults(getAoa3Ores(), "aoa3.json");
-    writeDefaults(getAromasDimensionalOres(), "aromasdimensionalworld.json");
-  }
-
-  private void writeDefaults(ArrayList<UBOreConfig> ores, String filename) {
+    writeDefaults(this::getMinecraftOres, "minecraft.json");
+    writeDefaults(this::getNuclearcraftOres, "nuclearcraft.json");
+    writeDefaults(this::getGrowthcraftOres, "growthcraft.json");
+    writeDefaults(this::getActuallyAdditionsOres, "actuallyadditions.json");
+    writeDefaults(this::getAppliedEnergisticsOres, "appliedenergistics2.json");
+    writeDefaults(this::getBaseMetalsOres, "basemetals.json");
+    writeDefaults(this::getBaseMineralsOres, "baseminerals.json");
+    writeDefaults(this::getBiomesOPlentyOres, "biomesoplenty.json");
+    writeDefaults(this::getBetterUndergroundOres, "betterunderground.json");
+    writeDefaults(this::getDraconicEvolutionOres, "draconicevolution.json");
+    writeDefaults(this::getEnderOreOres, "enderore.json");
+    writeDefaults(this::getExtremeReactorsOres, "extremereactors.json");
+    writeDefaults(this::getForestyOres, "forestry.json");
+    writeDefaults(this::getImmersiveEngineeringOres, "immersiveengineering.json");
+    writeDefaults(this::getIndustrialCraftOres, "industrialcraft.json");
+    writeDefaults(this::getMekanismOres, "mekanism.json");
+    writeDefaults(this::getModernMetalsOres, "modernmetals.json");
+    writeDefaults(this::getRFToolsOres, "rftools.json");
+    writeDefaults(this::getTechRebornOres, "techreborn.json");
+    writeDefaults(this::getThermalFoundationOres, "thermalfoundation.json");
+    writeDefaults(this::getThaumcraftOres, "thaumcraft.json");
+    writeDefaults(this::getGeolosysOres, "geolosys.json");
+    writeDefaults(this::getMysticalAgricultureOres, "mysticalagriculture.json");
+    writeDefaults(this::getMatterOverdriveLegacyOres, "matteroverdrivelegacy.json");
+    writeDefaults(this::getTaigaOres, "taiga.json");
+    writeDefaults(this::getMetallurgy4Ores, "metallurgy4.json");
+    writeDefaults(this::getProjectRedOres, "projectred.json");
+    writeDefaults(this::getPoorMetalsOres, "poormetals.json");
+    writeDefaults(this::getDenseMetalsOres, "densemetals.json");
+    writeDefaults(this::getAstralSorceryOres, "astralsorcery.json");
+    writeDefaults(this::getMysticalWorldOres, "mysticalworld.json");
+    writeDefaults(this::getBiomeYoullGoOres, "byg.json");
+    writeDefaults(this::getCandyWorldOres, "candyworld.json");
+    writeDefaults(this::getCurioOres, "curio.json");
+    writeDefaults(this::getBluePowerOres, "bluepower.json");
+    writeDefaults(this::getWildnatureOres, "wildnature.json");
+    writeDefaults(this::getIndustrialCraftClassicOres, "ic2classic.json");
+    writeDefaults(this::getGrimpackOres, "grimpack.json");
+    writeDefaults(this::getTreasure2Ores, "treasure2.json");
+    writeDefaults(this::getWorldsRetoldOres, "worldsretold.json");
+    writeDefaults(this::getScalingHealthOres, "scalinghealth.json");
+    writeDefaults(this::getPyrotechOres, "pyrotech.json");
+    writeDefaults(this::getMubbleOres, "mubble.json");
+    writeDefaults(this::getMoGlowstoneOres, "moglowstone.json");
+    writeDefaults(this::getFloricraftOres, "floricraft.json");
+    writeDefaults(this::getDartcraftOres, "dartcraftreloaded.json");
+    writeDefaults(this::getCustomIdeasOres, "customideas.json");
+    writeDefaults(this::getStarWarsOres, "starwars.json");
+    writeDefaults(this::getCommunityModOres, "communitymod.json");
+    writeDefaults(this::getAoa3Ores, "aoa3.json");
+    writeDefaults(this::getAromasDimensionalOres, "aromasdimensionalworld.json");
+  }
+
+  private void writeDefaults(Supplier<ArrayList<UBOreConfig>> ores, String filename) {
     try {
       Path filepath = Paths.get(this.directory.toString(), filename);
       if (!filepath.toFile().exists()) {
         Gson gson = new GsonBuilder()
           .setPrettyPrinting()
           .create();
-        String json = gson.toJson(ores, jsonType);
+        String json = gson.toJson(ores.get(), jsonType);
         Files.write(filepath, Arrays.asList(json.split("\n")), Charset.forName("UTF-8"));
       }
     } catch (FileNotFoundException e) {
@@ -136,41 +145,82 @@ public class ModOreRegistrar implements UBModOreRegistrar {
   }
 
   private void setupOres() {
+    long start = System.nanoTime();
+    OreManifest manifest = new OreManifest(manifestFile);
+    manifest.load();
+    List<OreManifest.FileEntry> entries = new ArrayList<>();
+    int parsed = 0;
+    long parseNanosSaved = 0;
     for (final File fileEntry : directory.listFiles()) {
       if (fileEntry.isFile() && FilenameUtils.getExtension(fileEntry.getPath()).equals("json")) {
-        readFile(fileEntry);
+        OreManifest.FileEntry entry;
+        try {
+          byte[] content = Files.readAllBytes(fileEntry.toPath());
+          CRC32 checksum = new CRC32();
+          checksum.update(content);
+          entry = manifest.get(fileEntry.getName(), content.length, checksum.getValue());
+          if (entry == null) {
+            long parseStart = System.nanoTime();
+            ArrayList<UBOreConfig> ores = gson.fromJson(new String(content, StandardCharsets.UTF_8), jsonType);
+            entry = new OreManifest.FileEntry(fileEntry.getName(), content.length, checksum.getValue(),
+                System.nanoTime() - parseStart, ores);
+            ++parsed;
+          } else {
+            parseNanosSaved += entry.parseNanos;
+          }
+        } catch (IOException | JsonSyntaxException e) {
+          // Left out of the manifest, read again on next launch
+          LOGGER.error("Can't read ore config " + fileEntry.getPath() + ": " + e);
+          continue;
+        }
+        entries.add(entry);
+        addOres(entry, fileEntry);
+      }
+    }
+    if (parsed > 0 || manifest.size() != entries.size()) {
+      try {
+        manifest.save(entries);
+      } catch (IOException e) {
+        LOGGER.warn("Ores manifest can't be saved: " + e);
       }
     }
+    LOGGER.info(String.format("%d ore configs loaded in %d ms, %d from the manifest (%d ms of parsing saved), %d parsed, "
+        + "%d ores of mods not loaded skipped", entries.size(), (System.nanoTime() - start) / 1000000,
+        entries.size() - parsed, parseNanosSaved / 1000000, parsed, skipped));
   }
 
-  private void readFile(File file) {
-    try {
-      Gson gson = new Gson();
-      String json = null;
-      json = FileUtils.readFileToString(file, "UTF8");
-      ArrayList<UBOreConfig> ores = gson.fromJson(json, jsonType);
-      if (ores != null) {
-        for(int i = 0; i < ores.size(); i++) {
-          UBOreConfig ore = ores.get(i);
-          if(this.ores.containsKey(ore.toKey())) {
-            String message = "Ore " + ore.toKey() + " has already been defined elsewhere!\nFound while checking: " + file.getAbsolutePath();
-            if(API.SETTINGS.crashOnProblems()) {
-              LOGGER.fatal(message);
-            }
-            else {
-              LOGGER.warn(message);
-            }
-          }
-          this.ores.put(ore.toKey(), ore);
+  private void addOres(OreManifest.FileEntry entry, File file) {
+    if (entry.ores == null) {
+      LOGGER.warn("No ores found in " + file.getPath());
+      return;
+    }
+    for (UBOreConfig ore : entry.ores) {
+      if (!isLoaded(ore)) {
+        ++skipped;
+        continue;
+      }
+      if (this.ores.containsKey(ore.toKey())) {
+        String message = "Ore " + ore.toKey() + " has already been defined elsewhere!\nFound while checking: " + file.getAbsolutePath();
+        if (API.SETTINGS.crashOnProblems()) {
+          LOGGER.fatal(message);
+        } else {
+          LOGGER.warn(message);
         }
-      } else {
-        LOGGER.warn("No ores found in " + file.getPath());
       }
-    } catch (IOException e) {
-      e.printStackTrace();
+      this.ores.put(ore.toKey(), ore);
     }
   }
 
+  /**
+   * Ores of mods not loaded can't be registered
+   */
+  private static boolean isLoaded(UBOreConfig ore) {
+    if (ore.getInternalOreName() == null)
+      return false;
+    String namespace = new ResourceLocation(ore.getInternalOreName()).getNamespace();
+    return namespace.equals("minecraft") || Loader.isModLoaded(namespace);
+  }
+
   private ArrayList<UBOreConfig> getMinecraftOres() {
     ArrayList<UBOreConfig> ores = new ArrayList<>();
     ores.add(new UBOreConfig("minecraft:diamond_ore", ModInfo.MODID + ":blocks/overlays/minecraft/diamond"));
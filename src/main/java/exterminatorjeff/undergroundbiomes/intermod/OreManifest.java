@@ -0,0 +1,174 @@
+package exterminatorjeff.undergroundbiomes.intermod;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of the ore JSON configs, so unchanged files don't go through
+ * Gson on every launch.<br>
+ * <br>
+ * Each file is stored with its length and checksum. A file whose content
+ * changed is parsed again and the manifest rewritten. Ores are stored
+ * before filtering out mods not loaded, so installing or removing a mod
+ * doesn't invalidate anything.
+ */
+final class OreManifest {
+
+  private static final int MAGIC = 0x55424F4D;
+  private static final int VERSION = 1;
+
+  static final class FileEntry {
+    final String name;
+    final long length;
+    final long checksum;
+    /**
+     * Time the last parsing took
+     */
+    final long parseNanos;
+    /**
+     * Null if the file has no ores
+     */
+    final List<UBOreConfig> ores;
+
+    FileEntry(String name, long length, long checksum, long parseNanos, List<UBOreConfig> ores) {
+      this.name = name;
+      this.length = length;
+      this.checksum = checksum;
+      this.parseNanos = parseNanos;
+      this.ores = ores;
+    }
+  }
+
+  private final File file;
+  private final Map<String, FileEntry> entries = new HashMap<>();
+
+  OreManifest(File file) {
+    this.file = file;
+  }
+
+  /**
+   * A missing, outdated or corrupted manifest is ignored.
+   */
+  void load() {
+    entries.clear();
+    if (!file.isFile())
+      return;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        return;
+      int files = in.readInt();
+      for (int i = 0; i < files; ++i) {
+        FileEntry entry = readEntry(in);
+        entries.put(entry.name, entry);
+      }
+    } catch (IOException | RuntimeException e) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * @return null if the file is not in the manifest or changed since
+   */
+  FileEntry get(String name, long length, long checksum) {
+    FileEntry entry = entries.get(name);
+    if (entry == null || entry.length != length || entry.checksum != checksum)
+      return null;
+    return entry;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Replace the manifest with the given files.
+   */
+  void save(Collection<FileEntry> files) throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(files.size());
+      for (FileEntry entry : files)
+        writeEntry(out, entry);
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    entries.clear();
+    for (FileEntry entry : files)
+      entries.put(entry.name, entry);
+  }
+
+  private static FileEntry readEntry(DataInputStream in) throws IOException {
+    String name = in.readUTF();
+    long length = in.readLong();
+    long checksum = in.readLong();
+    long parseNanos = in.readLong();
+    int count = in.readInt();
+    List<UBOreConfig> ores = null;
+    if (count >= 0) {
+      ores = new ArrayList<>(count);
+      for (int i = 0; i < count; ++i) {
+        String internalOreName = readNullable(in);
+        int meta = in.readInt();
+        String overlay = readNullable(in);
+        String color = readNullable(in);
+        int lightValue = in.readInt();
+        boolean alphaOverlay = in.readBoolean();
+        int directories = in.readInt();
+        ArrayList<String> oreDirectories = null;
+        if (directories >= 0) {
+          oreDirectories = new ArrayList<>(directories);
+          for (int j = 0; j < directories; ++j)
+            oreDirectories.add(in.readUTF());
+        }
+        ores.add(new UBOreConfig(internalOreName, meta, overlay, oreDirectories, color, lightValue, alphaOverlay));
+      }
+    }
+    return new FileEntry(name, length, checksum, parseNanos, ores);
+  }
+
+  private static void writeEntry(DataOutputStream out, FileEntry entry) throws IOException {
+    out.writeUTF(entry.name);
+    out.writeLong(entry.length);
+    out.writeLong(entry.checksum);
+    out.writeLong(entry.parseNanos);
+    if (entry.ores == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(entry.ores.size());
+    for (UBOreConfig ore : entry.ores) {
+      writeNullable(out, ore.getInternalOreName());
+      out.writeInt(ore.getMeta());
+      writeNullable(out, ore.getOverlay());
+      writeNullable(out, ore.getColor());
+      out.writeInt(ore.getLightValue());
+      out.writeBoolean(ore.hasAlphaOverlay());
+      List<String> oreDirectories = ore.getRawOreDirectories();
+      if (oreDirectories == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(oreDirectories.size());
+        for (String oreDirectory : oreDirectories)
+          out.writeUTF(oreDirectory);
+      }
+    }
+  }
+
+  private static String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeNullable(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null)
+      out.writeUTF(value);
+  }
+
+}
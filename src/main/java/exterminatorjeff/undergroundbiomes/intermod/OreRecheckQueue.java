@@ -0,0 +1,323 @@
+package exterminatorjeff.undergroundbiomes.intermod;
+
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * Positions where ore generation probed UB stone, waiting for the ores redo.
+ * <br>
+ * <br>
+ * Each dimension has a fixed number of lock stripes, each one an open
+ * addressing map from packed {@link ChunkPos} to the chunk positions. A
+ * position is stored once as an int (y << 8 | z << 4 | x), deduplicated with
+ * a 4096 bits set per chunk section.
+ */
+public final class OreRecheckQueue {
+
+  private static final int STRIPES = 64;
+
+  private final ConcurrentHashMap<Integer, Stripe[]> dimensions = new ConcurrentHashMap<>();
+
+  private Stripe[] stripes(int dimension) {
+    return dimensions.computeIfAbsent(dimension, key -> {
+      Stripe[] stripes = new Stripe[STRIPES];
+      for (int i = 0; i < STRIPES; ++i)
+        stripes[i] = new Stripe();
+      return stripes;
+    });
+  }
+
+  private static int mix(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ hash >>> 32);
+  }
+
+  private Stripe stripe(int dimension, int hash) {
+    return stripes(dimension)[hash >>> 26 & STRIPES - 1];
+  }
+
+  /**
+   * Thread safe.
+   */
+  void add(int dimension, int x, int y, int z) {
+    if (y < 0 || y > 255)
+      return;
+    int chunkX = x >> 4;
+    int chunkZ = z >> 4;
+    long key = ChunkPos.asLong(chunkX, chunkZ);
+    int hash = mix(key);
+    Stripe stripe = stripe(dimension, hash);
+    synchronized (stripe) {
+      stripe.get(key, hash, chunkX, chunkZ).add(y << 8 | (z & 15) << 4 | (x & 15));
+    }
+  }
+
+  /**
+   * Thread safe.
+   *
+   * @param positions Packed positions, see {@link ChunkPositions#toArray()}
+   */
+  void add(int dimension, int chunkX, int chunkZ, int[] positions) {
+    long key = ChunkPos.asLong(chunkX, chunkZ);
+    int hash = mix(key);
+    Stripe stripe = stripe(dimension, hash);
+    synchronized (stripe) {
+      ChunkEntry entry = stripe.get(key, hash, chunkX, chunkZ);
+      for (int position : positions)
+        entry.add(position & 0xFFFF);
+    }
+  }
+
+  /**
+   * Remove and return the positions queued for the chunks accepted by the
+   * filter.
+   *
+   * @param chunks Filter of packed {@link ChunkPos}
+   */
+  List<ChunkPositions> drain(int dimension, LongPredicate chunks) {
+    List<ChunkPositions> result = new ArrayList<>();
+    Stripe[] stripes = dimensions.get(dimension);
+    if (stripes != null)
+      for (Stripe stripe : stripes)
+        synchronized (stripe) {
+          stripe.drainTo(result, chunks);
+        }
+    return result;
+  }
+
+  /**
+   * Remove and return the positions queued for the chunk.
+   *
+   * @return null if none
+   */
+  ChunkPositions drain(int dimension, int chunkX, int chunkZ) {
+    if (!dimensions.containsKey(dimension))
+      return null;
+    long key = ChunkPos.asLong(chunkX, chunkZ);
+    int hash = mix(key);
+    Stripe stripe = stripe(dimension, hash);
+    synchronized (stripe) {
+      ChunkEntry entry = stripe.remove(key, hash);
+      return entry == null ? null : entry.positions();
+    }
+  }
+
+  /**
+   * @return Number of queued positions and approximate memory, per dimension
+   */
+  String report() {
+    StringBuilder result = new StringBuilder();
+    long totalPositions = 0;
+    long totalBytes = 0;
+    for (Integer dimension : dimensions.keySet()) {
+      long chunks = 0;
+      long positions = 0;
+      long bytes = 0;
+      for (Stripe stripe : dimensions.get(dimension))
+        synchronized (stripe) {
+          bytes += stripe.keys.length * 12L;
+          for (ChunkEntry entry : stripe.values)
+            if (entry != null) {
+              ++chunks;
+              positions += entry.size;
+              bytes += entry.bytes();
+            }
+        }
+      totalPositions += positions;
+      totalBytes += bytes;
+      result.append("dimension ").append(dimension).append(": ").append(positions).append(" positions in ")
+          .append(chunks).append(" chunks (").append(bytes / 1024).append(" KB); ");
+    }
+    return result.append(totalPositions).append(" positions queued for ores redo (").append(totalBytes / 1024)
+        .append(" KB)").toString();
+  }
+
+  /**
+   * Queued positions of a chunk.
+   */
+  public static final class ChunkPositions {
+    public final int chunkX;
+    public final int chunkZ;
+    private final int[] positions;
+    private final int size;
+
+    private ChunkPositions(int chunkX, int chunkZ, int[] positions, int size) {
+      this.chunkX = chunkX;
+      this.chunkZ = chunkZ;
+      this.positions = positions;
+      this.size = size;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public int x(int i) {
+      return chunkX << 4 | positions[i] & 15;
+    }
+
+    public int y(int i) {
+      return positions[i] >> 8;
+    }
+
+    public int z(int i) {
+      return chunkZ << 4 | positions[i] >> 4 & 15;
+    }
+
+    /**
+     * @return Positions packed as y << 8 | z << 4 | x
+     */
+    public int[] toArray() {
+      return Arrays.copyOf(positions, size);
+    }
+  }
+
+  private static final class ChunkEntry {
+    final int chunkX;
+    final int chunkZ;
+    int[] positions = new int[16];
+    int size = 0;
+    /**
+     * One 4096 bits set per section, allocated on first use
+     */
+    final long[][] queued = new long[16][];
+
+    ChunkEntry(int chunkX, int chunkZ) {
+      this.chunkX = chunkX;
+      this.chunkZ = chunkZ;
+    }
+
+    void add(int position) {
+      long[] bits = queued[position >> 12];
+      if (bits == null)
+        bits = queued[position >> 12] = new long[64];
+      int bit = position & 4095;
+      if ((bits[bit >> 6] & 1L << bit) != 0)
+        return;
+      bits[bit >> 6] |= 1L << bit;
+      if (size == positions.length)
+        positions = Arrays.copyOf(positions, size * 2);
+      positions[size++] = position;
+    }
+
+    ChunkPositions positions() {
+      return new ChunkPositions(chunkX, chunkZ, positions, size);
+    }
+
+    long bytes() {
+      long result = 64 + positions.length * 4L;
+      for (long[] bits : queued)
+        if (bits != null)
+          result += bits.length * 8L;
+      return result;
+    }
+  }
+
+  private static final class Stripe {
+    long[] keys = new long[16];
+    ChunkEntry[] values = new ChunkEntry[16];
+    int size = 0;
+
+    ChunkEntry get(long key, int hash, int chunkX, int chunkZ) {
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      while (values[slot] != null) {
+        if (keys[slot] == key)
+          return values[slot];
+        slot = slot + 1 & mask;
+      }
+      ChunkEntry entry = new ChunkEntry(chunkX, chunkZ);
+      keys[slot] = key;
+      values[slot] = entry;
+      if (++size * 2 > keys.length)
+        resize();
+      return entry;
+    }
+
+    private void resize() {
+      long[] oldKeys = keys;
+      ChunkEntry[] oldValues = values;
+      keys = new long[oldKeys.length * 2];
+      values = new ChunkEntry[oldValues.length * 2];
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; ++i) {
+        if (oldValues[i] == null)
+          continue;
+        int slot = mix(oldKeys[i]) & mask;
+        while (values[slot] != null)
+          slot = slot + 1 & mask;
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+
+    ChunkEntry remove(long key, int hash) {
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      while (values[slot] != null) {
+        if (keys[slot] == key) {
+          ChunkEntry result = values[slot];
+          shift(slot);
+          --size;
+          return result;
+        }
+        slot = slot + 1 & mask;
+      }
+      return null;
+    }
+
+    /**
+     * Move back the following entries of the probe sequence over the freed
+     * slot, linear probing has no tombstone
+     */
+    private void shift(int free) {
+      int mask = keys.length - 1;
+      int slot = free;
+      while (true) {
+        slot = slot + 1 & mask;
+        if (values[slot] == null) {
+          values[free] = null;
+          return;
+        }
+        int home = mix(keys[slot]) & mask;
+        // Moved unless its home slot is cyclically in (free, slot]
+        if (free <= slot ? free >= home || home > slot : free >= home && home > slot) {
+          keys[free] = keys[slot];
+          values[free] = values[slot];
+          free = slot;
+        }
+      }
+    }
+
+    void drainTo(List<ChunkPositions> result, LongPredicate chunks) {
+      if (size == 0)
+        return;
+      long[] oldKeys = keys;
+      ChunkEntry[] oldValues = values;
+      keys = new long[oldKeys.length];
+      values = new ChunkEntry[oldValues.length];
+      size = 0;
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; ++i) {
+        if (oldValues[i] == null)
+          continue;
+        if (chunks.test(oldKeys[i])) {
+          result.add(oldValues[i].positions());
+        } else {
+          int slot = mix(oldKeys[i]) & mask;
+          while (values[slot] != null)
+            slot = slot + 1 & mask;
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+          ++size;
+        }
+      }
+    }
+  }
+
+}
@@ -18,17 +18,15 @@ import net.minecraft.item.crafting.FurnaceRecipes;
 import net.minecraft.item.crafting.IRecipe;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
-import net.minecraftforge.client.event.TextureStitchEvent;
 import net.minecraftforge.event.RegistryEvent;
-import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.registry.GameRegistry;
 import net.minecraftforge.oredict.OreDictionary;
 import org.apache.logging.log4j.Level;
 
 import java.util.*;
+import java.util.function.LongPredicate;
 
 
 /**
@@ -76,6 +74,35 @@ public enum OresRegistry implements UBOresRegistry {
     return baseOre.getRegistryName() + ":" + baseOreMeta + ":" + baseStone.getRegistryName();
   }
 
+  /**
+   * Built on first lookup, once block IDs are known
+   */
+  private volatile UBifiedOreTable oreTable;
+
+  private UBifiedOreTable oreTable() {
+    UBifiedOreTable table = oreTable;
+    if (table == null) {
+      synchronized (this) {
+        table = oreTable;
+        if (table == null) {
+          table = new UBifiedOreTable();
+          for (UBifyRequest request : requests)
+            table.add(request.baseOre, request.baseOreMeta, request.getIgneousOreEntry().ore(),
+                request.getMetamorphicOreEntry().ore(), request.getSedimentraryOreEntry().ore());
+          oreTable = table;
+        }
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Block IDs changed, the ores lookup table is rebuilt on next use.
+   */
+  public void onIdMapping() {
+    oreTable = null;
+  }
+
   /**
    * Check if the given ore has been UBified.
    *
@@ -84,10 +111,7 @@ public enum OresRegistry implements UBOresRegistry {
    */
   public boolean isUBified(Block baseStone, IBlockState baseOreState) {
     if (UBConfig.SPECIFIC.ubifyOres() == false) return false;
-    Block baseOre = baseOreState.getBlock();
-    int baseOreMeta = baseOre.getMetaFromState(baseOreState);
-    boolean result = ubifiedOres.containsKey(toKey(baseOre, baseOreMeta, baseStone));
-    return result;
+    return oreTable().get(baseOreState, UBifiedOreTable.stoneIndex(baseStone)) != null;
   }
 
   /**
@@ -99,9 +123,7 @@ public enum OresRegistry implements UBOresRegistry {
    * @param baseOreState
    */
   public IBlockState getUBifiedOre(UBStone baseStone, int baseStoneMeta, IBlockState baseOreState) {
-    Block baseOre = baseOreState.getBlock();
-    int baseOreMeta = baseOre.getMetaFromState(baseOreState);
-    return ubifiedOres.get(toKey(baseOre, baseOreMeta, baseStone)).ore().getStateFromMeta(baseStoneMeta);
+    return oreTable().get(baseOreState, UBifiedOreTable.stoneIndex(baseStone)).getStateFromMeta(baseStoneMeta);
   }
 
   /**
@@ -294,61 +316,56 @@ public enum OresRegistry implements UBOresRegistry {
     }
   }
 
-  @SubscribeEvent
-  public void registerOverlayTextures(TextureStitchEvent.Pre e) {
-    oresToOverlays.values().forEach((overlayLocation) -> e.getMap().registerSprite(overlayLocation));
+  /**
+   * @return Number of distinct overlays, including the ones of ores not
+   * registered
+   */
+  public int overlayCount() {
+    return new HashSet<>(oresToOverlays.values()).size();
   }
 
   private int dimension(IBlockAccess access) {
     return ((World) access).provider.getDimension();
   }
 
-  private final HashMap<Integer, HashMap<ChunkPos, ArrayList<BlockPos>>> storedLocations = new HashMap<Integer, HashMap<ChunkPos, ArrayList<BlockPos>>>();
+  private final OreRecheckQueue storedLocations = new OreRecheckQueue();
 
-  private final ArrayList<BlockPos> blockPosList(IBlockAccess world, ChunkPos chunkID) {
-    int dimension = dimension(world);
-    HashMap<ChunkPos, ArrayList<BlockPos>> worldMap = storedLocations.get(dimension);
-    if (worldMap == null) {
-      worldMap = new HashMap<ChunkPos, ArrayList<BlockPos>>();
-      storedLocations.put(dimension, worldMap);
-    }
-    ArrayList<BlockPos> result = worldMap.get(chunkID);
-    if (result == null) {
-      result = new ArrayList<BlockPos>();
-      worldMap.put(chunkID, result);
-    }
-    return result;
+  /**
+   * Thread safe, called from the ore generation of any dimension.
+   */
+  public void setRecheck(IBlockAccess world, BlockPos pos) {
+    storedLocations.add(dimension(world), pos.getX(), pos.getY(), pos.getZ());
   }
 
-  public void setRecheck(IBlockAccess world, BlockPos pos) {
-    synchronized (storedLocations) {
-      ChunkPos chunkID = new ChunkPos(pos);
-      blockPosList(world, chunkID).add(pos);
-    }
+  /**
+   * Remove and return the positions queued for the dimension, in the chunks
+   * accepted by the filter.
+   *
+   * @param chunks Filter of packed {@link net.minecraft.util.math.ChunkPos}
+   */
+  public List<OreRecheckQueue.ChunkPositions> forRedo(IBlockAccess world, LongPredicate chunks) {
+    return storedLocations.drain(dimension(world), chunks);
   }
 
-  public HashMap<ChunkPos, ArrayList<BlockPos>> forRedo(IBlockAccess world) {
-    HashMap<ChunkPos, ArrayList<BlockPos>> result = null;
-    synchronized (storedLocations) {
-      int dimension = dimension(world);
-      result = storedLocations.get(dimension);
-      if (result == null) result = new HashMap<ChunkPos, ArrayList<BlockPos>>();
-      storedLocations.remove(dimension);
-    }
-    return result;
+  /**
+   * Remove and return the positions queued for the chunk.
+   *
+   * @return null if none
+   */
+  public OreRecheckQueue.ChunkPositions forRedo(IBlockAccess world, int chunkX, int chunkZ) {
+    return storedLocations.drain(dimension(world), chunkX, chunkZ);
+  }
+
+  /**
+   * Queue again positions taken with {@link #forRedo}.
+   *
+   * @param positions See {@link OreRecheckQueue.ChunkPositions#toArray()}
+   */
+  public void setRecheck(IBlockAccess world, int chunkX, int chunkZ, int[] positions) {
+    storedLocations.add(dimension(world), chunkX, chunkZ, positions);
   }
 
   public void recheckPile() {
-    int result = 0;
-    for (Integer world : this.storedLocations.keySet()) {
-      int worldResult = 0;
-      HashMap<ChunkPos, ArrayList<BlockPos>> chunkPosMap = storedLocations.get(world);
-      for (ChunkPos chunkPos : chunkPosMap.keySet()) {
-        worldResult += chunkPosMap.get(chunkPos).size();
-      }
-      result += worldResult;
-      System.out.println("" + worldResult + " Blocks in World : " + world.toString());
-    }
-    System.out.println("Blocks queued for redo: " + result);
+    LOGGER.info(storedLocations.report());
   }
 }
@@ -22,6 +22,16 @@ public class UBOreConfig implements IUBOreConfig {
     this.color = color;
   }
 
+  /**
+   * Every field, used by {@link OreManifest}
+   */
+  UBOreConfig(String internalOreName, int meta, String overlay, ArrayList<String> oreDirectories, String color,
+      int lightValue, boolean alphaOverlay) {
+    this(internalOreName, meta, overlay, oreDirectories, color);
+    this.lightValue = lightValue;
+    this.alphaOverlay = alphaOverlay;
+  }
+
   public UBOreConfig(String internalOreName, int meta, String overlay, ArrayList<String> oreDirectories) {
     this(internalOreName, meta, overlay, oreDirectories, null);
   }
@@ -72,6 +82,13 @@ public class UBOreConfig implements IUBOreConfig {
     return oreDirectories;
   }
 
+  /**
+   * @return Null if not set
+   */
+  ArrayList<String> getRawOreDirectories() {
+    return oreDirectories;
+  }
+
   @Override
   public int getLightValue() {
     if (lightValue == null)
@@ -0,0 +1,77 @@
+package exterminatorjeff.undergroundbiomes.intermod;
+
+import exterminatorjeff.undergroundbiomes.api.API;
+import exterminatorjeff.undergroundbiomes.common.block.UBOre;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+
+import java.util.Arrays;
+
+/**
+ * UBified ores indexed by {@link Block#getStateId} of the base ore, with the
+ * igneous, metamorphic and sedimentary versions next to each other.<br>
+ * <br>
+ * State IDs are only known once blocks are registered and change when a
+ * world remaps them, so the table is built lazily by {@link OresRegistry}
+ * and dropped on remapping. Each slot also keeps its base ore block, a state
+ * whose ID is out of date is never matched.
+ */
+final class UBifiedOreTable {
+
+  static final int IGNEOUS = 0;
+  static final int METAMORPHIC = 1;
+  static final int SEDIMENTARY = 2;
+
+  private Block[] baseOres = new Block[0];
+  private UBOre[] ores = new UBOre[0];
+
+  /**
+   * @param meta {@link UBOre#NO_METADATA} for every state with metadata 0
+   */
+  void add(Block baseOre, int meta, UBOre igneous, UBOre metamorphic, UBOre sedimentary) {
+    if (meta == UBOre.NO_METADATA)
+      meta = 0;
+    for (IBlockState state : baseOre.getBlockState().getValidStates()) {
+      if (baseOre.getMetaFromState(state) != meta)
+        continue;
+      int id = Block.getStateId(state);
+      if (id < 0)
+        continue;
+      if (id >= baseOres.length) {
+        int size = Math.max(id + 1, baseOres.length * 2);
+        baseOres = Arrays.copyOf(baseOres, size);
+        ores = Arrays.copyOf(ores, size * 3);
+      }
+      baseOres[id] = baseOre;
+      ores[id * 3 + IGNEOUS] = igneous;
+      ores[id * 3 + METAMORPHIC] = metamorphic;
+      ores[id * 3 + SEDIMENTARY] = sedimentary;
+    }
+  }
+
+  /**
+   * @return -1 if the block is not one of the UB stones of the strata
+   */
+  static int stoneIndex(Block baseStone) {
+    if (baseStone == API.IGNEOUS_STONE.getBlock())
+      return IGNEOUS;
+    if (baseStone == API.METAMORPHIC_STONE.getBlock())
+      return METAMORPHIC;
+    if (baseStone == API.SEDIMENTARY_STONE.getBlock())
+      return SEDIMENTARY;
+    return -1;
+  }
+
+  /**
+   * @return null if the state has no UBified version in the stone
+   */
+  UBOre get(IBlockState baseOreState, int stoneIndex) {
+    if (stoneIndex < 0)
+      return null;
+    int id = Block.getStateId(baseOreState);
+    if (id < 0 || id >= baseOres.length || baseOres[id] != baseOreState.getBlock())
+      return null;
+    return ores[id * 3 + stoneIndex];
+  }
+
+}
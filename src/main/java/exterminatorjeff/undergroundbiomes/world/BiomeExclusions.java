@@ -0,0 +1,65 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import exterminatorjeff.undergroundbiomes.config.UBConfig;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.biome.Biome;
+import org.apache.logging.log4j.Level;
+
+import java.util.BitSet;
+
+/**
+ * Surface biomes where sand and gravel must not be replaced, parsed from the
+ * ReplaceSandExcludedBiomes and ReplaceGravelExcludedBiomes settings into
+ * biome ID sets.<br>
+ * <br>
+ * Biomes are only registered after the config is loaded, so the settings are
+ * tracked from the first {@link #init()}, which happens on world load.
+ */
+enum BiomeExclusions {
+  INSTANCE;
+
+  private static final UBLogger LOGGER = new UBLogger(BiomeExclusions.class, Level.INFO);
+
+  private volatile BitSet sand = new BitSet();
+  private volatile BitSet gravel = new BitSet();
+  private boolean tracked = false;
+
+  /**
+   * Parse the settings again and start tracking their changes.
+   */
+  synchronized void init() {
+    UBConfig config = (UBConfig) UBConfig.SPECIFIC;
+    if (!tracked) {
+      config.replaceSandExcludedBiomes.addTracker(value -> sand = parse(value));
+      config.replaceGravelExcludedBiomes.addTracker(value -> gravel = parse(value));
+      tracked = true;
+    }
+    sand = parse(config.replaceSandExcludedBiomes());
+    gravel = parse(config.replaceGravelExcludedBiomes());
+  }
+
+  private static BitSet parse(String biomeNames) {
+    BitSet result = new BitSet(256);
+    for (String name : biomeNames.split(",")) {
+      name = name.trim();
+      if (name.isEmpty())
+        continue;
+      Biome biome = Biome.REGISTRY.getObject(new ResourceLocation(name));
+      if (biome == null)
+        LOGGER.debug("Unknown excluded biome '" + name + "', ignored");
+      else
+        result.set(Biome.getIdForBiome(biome));
+    }
+    return result;
+  }
+
+  boolean sandExcluded(int biomeID) {
+    return sand.get(biomeID);
+  }
+
+  boolean gravelExcluded(int biomeID) {
+    return gravel.get(biomeID);
+  }
+
+}
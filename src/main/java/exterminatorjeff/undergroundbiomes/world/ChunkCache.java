@@ -0,0 +1,72 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of per chunk data, keyed by packed {@link ChunkPos}, evicting
+ * the least recently used chunk.<br>
+ * <br>
+ * Values are computed outside of the cache lock, two threads may compute the
+ * same chunk but the result is the same.
+ *
+ * @param <V>
+ */
+final class ChunkCache<V> {
+
+  private final String name;
+  private final int capacity;
+  private final Map<Long, V> entries;
+  private long hits = 0;
+  private long misses = 0;
+
+  ChunkCache(String name, int capacity) {
+    this.name = name;
+    this.capacity = Math.max(1, capacity);
+    this.entries = new LinkedHashMap<Long, V>(16, 0.75F, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+        return size() > ChunkCache.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * @return The cached value, null if the chunk isn't cached
+   */
+  synchronized V get(int chunkX, int chunkZ) {
+    V value = entries.get(ChunkPos.asLong(chunkX, chunkZ));
+    if (value == null)
+      ++misses;
+    else
+      ++hits;
+    return value;
+  }
+
+  /**
+   * Same as {@link #get(int, int)} without counting a hit or miss, for
+   * lookups that have another source.
+   */
+  synchronized V peek(int chunkX, int chunkZ) {
+    return entries.get(ChunkPos.asLong(chunkX, chunkZ));
+  }
+
+  synchronized void put(int chunkX, int chunkZ, V value) {
+    entries.put(ChunkPos.asLong(chunkX, chunkZ), value);
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  synchronized String report() {
+    long total = hits + misses;
+    return name + " cache: " + entries.size() + "/" + capacity + " chunks, " + hits + " hits, " + misses
+        + " misses (" + (total == 0 ? 0 : hits * 100 / total) + "% hits)";
+  }
+
+}
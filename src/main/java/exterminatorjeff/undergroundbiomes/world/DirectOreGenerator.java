@@ -0,0 +1,233 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import com.google.common.base.Predicate;
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import exterminatorjeff.undergroundbiomes.common.block.UBStone;
+import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+import net.minecraft.world.biome.BiomeDecorator;
+import net.minecraft.world.gen.ChunkGeneratorSettings;
+import net.minecraft.world.gen.feature.WorldGenMinable;
+import net.minecraft.world.gen.feature.WorldGenerator;
+import net.minecraftforge.event.terraingen.OreGenEvent.GenerateMinable;
+import org.apache.logging.log4j.Level;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Ore generation of the biome decorators writing the UBified ore into UB
+ * stone in a single step.<br>
+ * <br>
+ * Only the standard ores of an unmodified {@link BiomeDecorator} are taken
+ * over, with the same random calls so veins don't move. Other generators
+ * place the base ore and rely on the ores redo queue.
+ */
+final class DirectOreGenerator {
+
+  private static final UBLogger LOGGER = new UBLogger(DirectOreGenerator.class, Level.INFO);
+
+  private static Field oreBlock;
+  private static Field numberOfBlocks;
+  private static Field predicate;
+  private static boolean available = false;
+
+  static {
+    try {
+      oreBlock = fieldOfType(WorldGenMinable.class, IBlockState.class);
+      numberOfBlocks = fieldOfType(WorldGenMinable.class, int.class);
+      predicate = fieldOfType(WorldGenMinable.class, Predicate.class);
+      available = true;
+    } catch (RuntimeException e) {
+      LOGGER.warn("Ore generators can't be read, ores will be redone after generation: " + e);
+    }
+  }
+
+  private DirectOreGenerator() {
+  }
+
+  private static Field fieldOfType(Class<?> owner, Class<?> type) {
+    for (Field field : owner.getDeclaredFields()) {
+      if (field.getType() == type) {
+        field.setAccessible(true);
+        return field;
+      }
+    }
+    throw new IllegalStateException("No " + type.getSimpleName() + " field in " + owner.getSimpleName());
+  }
+
+  /**
+   * Generate the ores of the event if it comes from the decorator of the
+   * biome being decorated.
+   *
+   * @return True if the ores were generated, the event must then be denied
+   */
+  static boolean generate(GenerateMinable event) {
+    if (!available)
+      return false;
+    World world = event.getWorld();
+    BlockPos chunkPos = event.getPos();
+    BiomeDecorator decorator = world.getBiome(chunkPos.add(16, 0, 16)).decorator;
+    // Subclasses like the mesa one may post more veins or other heights
+    if (decorator == null || decorator.getClass() != BiomeDecorator.class)
+      return false;
+    ChunkGeneratorSettings settings = decorator.chunkProviderSettings;
+    WorldGenerator generator = event.getGenerator();
+    if (settings == null || generator == null || generator.getClass() != WorldGenMinable.class)
+      return false;
+    Random random = event.getRand();
+    switch (event.getType()) {
+      case COAL:
+        return generator == decorator.coalGen
+            && standard(world, random, chunkPos, generator, settings.coalCount, settings.coalMinHeight, settings.coalMaxHeight);
+      case IRON:
+        return generator == decorator.ironGen
+            && standard(world, random, chunkPos, generator, settings.ironCount, settings.ironMinHeight, settings.ironMaxHeight);
+      case GOLD:
+        return generator == decorator.goldGen
+            && standard(world, random, chunkPos, generator, settings.goldCount, settings.goldMinHeight, settings.goldMaxHeight);
+      case REDSTONE:
+        return generator == decorator.redstoneGen
+            && standard(world, random, chunkPos, generator, settings.redstoneCount, settings.redstoneMinHeight,
+            settings.redstoneMaxHeight);
+      case DIAMOND:
+        return generator == decorator.diamondGen
+            && standard(world, random, chunkPos, generator, settings.diamondCount, settings.diamondMinHeight,
+            settings.diamondMaxHeight);
+      case LAPIS:
+        return generator == decorator.lapisGen
+            && centered(world, random, chunkPos, generator, settings.lapisCount, settings.lapisCenterHeight,
+            settings.lapisSpread);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Same as {@link BiomeDecorator#genStandardOre1}
+   */
+  private static boolean standard(World world, Random random, BlockPos chunkPos, WorldGenerator generator, int count,
+      int minHeight, int maxHeight) {
+    Vein vein = Vein.of(generator);
+    if (vein == null)
+      return false;
+    if (maxHeight < minHeight) {
+      int height = minHeight;
+      minHeight = maxHeight;
+      maxHeight = height;
+    } else if (maxHeight == minHeight) {
+      if (minHeight < 255)
+        ++maxHeight;
+      else
+        --minHeight;
+    }
+    for (int i = 0; i < count; ++i)
+      vein.generate(world, random,
+          chunkPos.add(random.nextInt(16), random.nextInt(maxHeight - minHeight) + minHeight, random.nextInt(16)));
+    return true;
+  }
+
+  /**
+   * Same as {@link BiomeDecorator#genStandardOre2}
+   */
+  private static boolean centered(World world, Random random, BlockPos chunkPos, WorldGenerator generator, int count,
+      int centerHeight, int spread) {
+    Vein vein = Vein.of(generator);
+    if (vein == null)
+      return false;
+    for (int i = 0; i < count; ++i)
+      vein.generate(world, random, chunkPos.add(random.nextInt(16),
+          random.nextInt(spread) + random.nextInt(spread) + centerHeight - spread, random.nextInt(16)));
+    return true;
+  }
+
+  private static final class Vein {
+    final IBlockState ore;
+    final int size;
+    final Predicate<IBlockState> target;
+    /**
+     * UB stones stand for the stone the vein would replace
+     */
+    final boolean replacesStone;
+
+    private Vein(IBlockState ore, int size, Predicate<IBlockState> target) {
+      this.ore = ore;
+      this.size = size;
+      this.target = target;
+      this.replacesStone = target.apply(Blocks.STONE.getDefaultState());
+    }
+
+    @SuppressWarnings("unchecked")
+    static Vein of(WorldGenerator generator) {
+      try {
+        return new Vein((IBlockState) oreBlock.get(generator), numberOfBlocks.getInt(generator),
+            (Predicate<IBlockState>) predicate.get(generator));
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+
+    /**
+     * Same shape and random calls as {@link WorldGenMinable#generate}
+     */
+    void generate(World world, Random random, BlockPos position) {
+      float angle = random.nextFloat() * (float) Math.PI;
+      double x0 = (double) ((float) (position.getX() + 8) + MathHelper.sin(angle) * (float) size / 8.0F);
+      double x1 = (double) ((float) (position.getX() + 8) - MathHelper.sin(angle) * (float) size / 8.0F);
+      double z0 = (double) ((float) (position.getZ() + 8) + MathHelper.cos(angle) * (float) size / 8.0F);
+      double z1 = (double) ((float) (position.getZ() + 8) - MathHelper.cos(angle) * (float) size / 8.0F);
+      double y0 = (double) (position.getY() + random.nextInt(3) - 2);
+      double y1 = (double) (position.getY() + random.nextInt(3) - 2);
+      BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+      for (int i = 0; i < size; ++i) {
+        float progress = (float) i / (float) size;
+        double centerX = x0 + (x1 - x0) * (double) progress;
+        double centerY = y0 + (y1 - y0) * (double) progress;
+        double centerZ = z0 + (z1 - z0) * (double) progress;
+        double scale = random.nextDouble() * (double) size / 16.0D;
+        double horizontal = (double) (MathHelper.sin((float) Math.PI * progress) + 1.0F) * scale + 1.0D;
+        double vertical = (double) (MathHelper.sin((float) Math.PI * progress) + 1.0F) * scale + 1.0D;
+        int minX = MathHelper.floor(centerX - horizontal / 2.0D);
+        int minY = MathHelper.floor(centerY - vertical / 2.0D);
+        int minZ = MathHelper.floor(centerZ - horizontal / 2.0D);
+        int maxX = MathHelper.floor(centerX + horizontal / 2.0D);
+        int maxY = MathHelper.floor(centerY + vertical / 2.0D);
+        int maxZ = MathHelper.floor(centerZ + horizontal / 2.0D);
+
+        for (int x = minX; x <= maxX; ++x) {
+          double dx = ((double) x + 0.5D - centerX) / (horizontal / 2.0D);
+          if (dx * dx >= 1.0D)
+            continue;
+          for (int y = minY; y <= maxY; ++y) {
+            double dy = ((double) y + 0.5D - centerY) / (vertical / 2.0D);
+            if (dx * dx + dy * dy >= 1.0D)
+              continue;
+            for (int z = minZ; z <= maxZ; ++z) {
+              double dz = ((double) z + 0.5D - centerZ) / (horizontal / 2.0D);
+              if (dx * dx + dy * dy + dz * dz < 1.0D)
+                place(world, pos.setPos(x, y, z));
+            }
+          }
+        }
+      }
+    }
+
+    private void place(World world, BlockPos.MutableBlockPos pos) {
+      IBlockState state = world.getBlockState(pos);
+      Block block = state.getBlock();
+      if (replacesStone && block instanceof UBStone && OresRegistry.INSTANCE.isUBified(block, ore)) {
+        UBStone stone = (UBStone) block;
+        world.setBlockState(pos.toImmutable(), OresRegistry.INSTANCE.getUBifiedOre(stone, stone.getMetaFromState(state), ore), 2);
+      } else if (block.isReplaceableOreGen(state, world, pos, target)) {
+        world.setBlockState(pos.toImmutable(), ore, 2);
+      }
+    }
+  }
+
+}
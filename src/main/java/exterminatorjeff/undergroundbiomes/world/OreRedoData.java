@@ -0,0 +1,122 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.intermod.OreRecheckQueue;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.storage.MapStorage;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ores redo positions of chunks unloaded before the redo, applied when the
+ * chunk is loaded again.<br>
+ * <br>
+ * The number of positions is bounded, the oldest chunks are dropped first.
+ * Must be public with a name constructor to be loaded by the world storage.
+ */
+public final class OreRedoData extends WorldSavedData {
+
+  private static final String NAME = "UndergroundBiomesOreRedo";
+  static final int MAX_POSITIONS = 1 << 20;
+
+  /**
+   * Packed {@link ChunkPos} to packed positions, in spill order
+   */
+  private final Map<Long, int[]> spilled = new LinkedHashMap<>();
+  private int positions = 0;
+
+  public OreRedoData(String name) {
+    super(name);
+  }
+
+  static OreRedoData get(World world) {
+    MapStorage storage = world.getPerWorldStorage();
+    OreRedoData data = (OreRedoData) storage.getOrLoadData(OreRedoData.class, NAME);
+    if (data == null) {
+      data = new OreRedoData(NAME);
+      storage.setData(NAME, data);
+    }
+    return data;
+  }
+
+  /**
+   * @return Number of positions dropped to stay within the bound
+   */
+  int spill(OreRecheckQueue.ChunkPositions chunk) {
+    long key = ChunkPos.asLong(chunk.chunkX, chunk.chunkZ);
+    int[] added = chunk.toArray();
+    int[] previous = spilled.remove(key);
+    if (previous != null) {
+      positions -= previous.length;
+      int[] merged = Arrays.copyOf(previous, previous.length + added.length);
+      System.arraycopy(added, 0, merged, previous.length, added.length);
+      added = merged;
+    }
+    spilled.put(key, added);
+    positions += added.length;
+    int dropped = 0;
+    Iterator<int[]> oldest = spilled.values().iterator();
+    while (positions > MAX_POSITIONS) {
+      int[] removed = oldest.next();
+      oldest.remove();
+      positions -= removed.length;
+      dropped += removed.length;
+    }
+    markDirty();
+    return dropped;
+  }
+
+  /**
+   * @return null if none
+   */
+  int[] take(int chunkX, int chunkZ) {
+    if (spilled.isEmpty())
+      return null;
+    int[] result = spilled.remove(ChunkPos.asLong(chunkX, chunkZ));
+    if (result != null) {
+      positions -= result.length;
+      markDirty();
+    }
+    return result;
+  }
+
+  int size() {
+    return positions;
+  }
+
+  @Override
+  public void readFromNBT(NBTTagCompound nbt) {
+    spilled.clear();
+    positions = 0;
+    NBTTagList chunks = nbt.getTagList("Chunks", Constants.NBT.TAG_COMPOUND);
+    for (int i = 0; i < chunks.tagCount(); ++i) {
+      NBTTagCompound chunk = chunks.getCompoundTagAt(i);
+      int[] chunkPositions = chunk.getIntArray("Positions");
+      spilled.put(ChunkPos.asLong(chunk.getInteger("X"), chunk.getInteger("Z")), chunkPositions);
+      positions += chunkPositions.length;
+    }
+  }
+
+  @Override
+  public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
+    NBTTagList chunks = new NBTTagList();
+    for (Map.Entry<Long, int[]> entry : spilled.entrySet()) {
+      NBTTagCompound chunk = new NBTTagCompound();
+      long key = entry.getKey();
+      chunk.setInteger("X", (int) key);
+      chunk.setInteger("Z", (int) (key >> 32));
+      chunk.setIntArray("Positions", entry.getValue());
+      chunks.appendTag(chunk);
+    }
+    nbt.setTag("Chunks", chunks);
+    return nbt;
+  }
+
+}
@@ -0,0 +1,199 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.BitArray;
+import net.minecraft.util.IntIdentityHashBiMap;
+import net.minecraft.world.chunk.BlockStateContainer;
+import net.minecraft.world.chunk.BlockStatePaletteHashMap;
+import net.minecraft.world.chunk.BlockStatePaletteLinear;
+import net.minecraft.world.chunk.BlockStatePaletteRegistry;
+import net.minecraft.world.chunk.IBlockStatePalette;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.apache.logging.log4j.Level;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.function.Predicate;
+
+/**
+ * Read only access to the palette and blocks of a chunk section.<br>
+ * <br>
+ * Fields are looked up by type so this works with both deobfuscated and SRG
+ * names. If anything can't be read, every section is reported as possibly
+ * matching and gets a full scan.
+ */
+final class PaletteAccess {
+
+  private static final UBLogger LOGGER = new UBLogger(PaletteAccess.class, Level.INFO);
+
+  private static Field containerPalette;
+  private static Field containerStorage;
+  private static Field linearStates;
+  private static Field hashMapStates;
+  private static boolean available = false;
+
+  static {
+    try {
+      containerPalette = fieldOfType(BlockStateContainer.class, IBlockStatePalette.class);
+      containerStorage = fieldOfType(BlockStateContainer.class, BitArray.class);
+      linearStates = fieldOfType(BlockStatePaletteLinear.class, IBlockState[].class);
+      hashMapStates = fieldOfType(BlockStatePaletteHashMap.class, IntIdentityHashBiMap.class);
+      available = true;
+    } catch (RuntimeException e) {
+      LOGGER.error("Chunk section palettes can't be read, sections will be fully scanned: " + e);
+    }
+  }
+
+  private PaletteAccess() {
+  }
+
+  /**
+   * Static fields are skipped, BlockStateContainer declares its shared
+   * registry palette before its own palette.
+   */
+  private static Field fieldOfType(Class<?> owner, Class<?> type) {
+    for (Field field : owner.getDeclaredFields()) {
+      if (field.getType() == type && !Modifier.isStatic(field.getModifiers())) {
+        field.setAccessible(true);
+        return field;
+      }
+    }
+    throw new IllegalStateException("No " + type.getSimpleName() + " instance field in " + owner.getSimpleName());
+  }
+
+  /**
+   * The palette can still list states that were overwritten since, so this
+   * may report a match for a section that doesn't contain it anymore.
+   *
+   * @return False only if no state of the section palette matches
+   */
+  @SuppressWarnings("unchecked")
+  static boolean anyPaletteState(ExtendedBlockStorage storage, Predicate<IBlockState> predicate) {
+    if (!available)
+      return true;
+    try {
+      Object palette = containerPalette.get(storage.getData());
+      if (palette instanceof BlockStatePaletteLinear) {
+        for (IBlockState state : (IBlockState[]) linearStates.get(palette)) {
+          // Unused slots are at the end
+          if (state == null)
+            break;
+          if (predicate.test(state))
+            return true;
+        }
+        return false;
+      }
+      if (palette instanceof BlockStatePaletteHashMap) {
+        for (IBlockState state : (IntIdentityHashBiMap<IBlockState>) hashMapStates.get(palette)) {
+          if (state != null && predicate.test(state))
+            return true;
+        }
+        return false;
+      }
+    } catch (IllegalAccessException e) {
+      LOGGER.warn("Chunk section palettes can't be read, sections will be fully scanned: " + e);
+      available = false;
+    }
+    // Global palette, no way to know without scanning
+    return true;
+  }
+
+  /**
+   * Must be called from the thread owning the chunk.
+   *
+   * @return A copy of the section blocks, null if it can't be read
+   */
+  @SuppressWarnings("unchecked")
+  static Snapshot snapshot(ExtendedBlockStorage storage) {
+    if (!available)
+      return null;
+    try {
+      BlockStateContainer container = storage.getData();
+      Object palette = containerPalette.get(container);
+      IBlockState[] states = null;
+      if (palette instanceof BlockStatePaletteLinear) {
+        IBlockState[] linear = (IBlockState[]) linearStates.get(palette);
+        int size = 0;
+        while (size < linear.length && linear[size] != null)
+          ++size;
+        states = new IBlockState[size];
+        System.arraycopy(linear, 0, states, 0, size);
+      } else if (palette instanceof BlockStatePaletteHashMap) {
+        IntIdentityHashBiMap<IBlockState> hashMap = (IntIdentityHashBiMap<IBlockState>) hashMapStates.get(palette);
+        states = new IBlockState[hashMap.size()];
+        for (int i = 0; i < states.length; ++i)
+          states[i] = hashMap.get(i);
+      } else if (!(palette instanceof BlockStatePaletteRegistry)) {
+        // Indices of an unknown palette can't be decoded
+        return null;
+      }
+      long[] data = ((BitArray) containerStorage.get(container)).getBackingLongArray().clone();
+      return new Snapshot(data, states);
+    } catch (IllegalAccessException e) {
+      LOGGER.warn("Chunk section palettes can't be read, sections will be fully scanned: " + e);
+      available = false;
+      return null;
+    }
+  }
+
+  /**
+   * Blocks of a chunk section at the time it was copied, readable from any
+   * thread.
+   */
+  static final class Snapshot {
+
+    private final long[] data;
+    private final int bits;
+    private final long mask;
+    /**
+     * Null for the global palette
+     */
+    private final IBlockState[] states;
+
+    private Snapshot(long[] data, IBlockState[] states) {
+      this.data = data;
+      // 4096 entries, packed in 64 bits longs
+      this.bits = data.length * 64 / 4096;
+      this.mask = (1L << bits) - 1L;
+      this.states = states;
+    }
+
+    /**
+     * @return False if no state of the section palette matches, always true
+     *         for the global palette
+     */
+    boolean anyPaletteState(Predicate<IBlockState> predicate) {
+      if (states == null)
+        return true;
+      for (IBlockState state : states)
+        if (state != null && predicate.test(state))
+          return true;
+      return false;
+    }
+
+    /**
+     * Same layout as {@link BitArray#getAt(int)}.
+     *
+     * @return The block state, null if unknown
+     */
+    IBlockState get(int x, int y, int z) {
+      int index = y << 8 | z << 4 | x;
+      int bitIndex = index * bits;
+      int first = bitIndex >> 6;
+      int last = ((index + 1) * bits - 1) >> 6;
+      int offset = bitIndex ^ first << 6;
+      int value;
+      if (first == last)
+        value = (int) (data[first] >>> offset & mask);
+      else
+        value = (int) ((data[first] >>> offset | data[last] << (64 - offset)) & mask);
+      if (states == null)
+        return Block.BLOCK_STATE_IDS.getByValue(value);
+      return value < states.length ? states[value] : null;
+    }
+
+  }
+
+}
@@ -0,0 +1,334 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.api.UBBiome;
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import exterminatorjeff.undergroundbiomes.config.UBConfig;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.NibbleArray;
+import org.apache.logging.log4j.Level;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stone replacement of every chunk saved in the region files of a dimension,
+ * without loading them in the world.<br>
+ * <br>
+ * Region files are converted in parallel, each one read at once and written
+ * to a temporary file moved over the original. Converted chunks get the
+ * {@link UBifiedMarker} so they are skipped afterwards, and converted region
+ * files are listed in a checkpoint file so an interrupted conversion resumes
+ * where it stopped.<br>
+ * <br>
+ * The region files must not be used by anything else during the conversion.
+ */
+final class RegionConverter {
+
+  private static final UBLogger LOGGER = new UBLogger(RegionConverter.class, Level.INFO);
+
+  private static final String CHECKPOINT = "ubconvert.checkpoint";
+  private static final Pattern REGION_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+  private static final int SECTOR = 4096;
+  private static final int GZIP = 1;
+  private static final int ZLIB = 2;
+  private static final long REPORT_INTERVAL = 30;
+
+  private final File regionDirectory;
+  private final TraditionalStoneReplacer replacer;
+  private final UBifiedMarker marker;
+  /**
+   * Packed {@link ChunkPos} of the chunks to leave as is, e.g. loaded ones
+   */
+  private final Set<Long> skipped;
+  private final int threads;
+  private final int generationHeight = UBConfig.SPECIFIC.generationHeight();
+
+  private final AtomicLong chunksRead = new AtomicLong();
+  private final AtomicLong chunksConverted = new AtomicLong();
+
+  RegionConverter(File regionDirectory, TraditionalStoneReplacer replacer, UBifiedMarker marker, Set<Long> skipped,
+      int threads) {
+    this.regionDirectory = regionDirectory;
+    this.replacer = replacer;
+    this.marker = marker;
+    this.skipped = skipped;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Blocks until every region file is converted.
+   */
+  void run() throws IOException, InterruptedException {
+    File[] files = regionDirectory.listFiles((directory, name) -> REGION_NAME.matcher(name).matches());
+    if (files == null || files.length == 0) {
+      LOGGER.info("No region file in " + regionDirectory);
+      return;
+    }
+    File checkpoint = new File(regionDirectory, CHECKPOINT);
+    Set<String> done = new HashSet<>();
+    if (checkpoint.exists())
+      done.addAll(Files.readAllLines(checkpoint.toPath(), StandardCharsets.UTF_8));
+    List<File> todo = new ArrayList<>();
+    for (File file : files)
+      if (!done.contains(file.getName()))
+        todo.add(file);
+    LOGGER.info("Converting " + todo.size() + " region files in " + regionDirectory + " with " + threads
+        + " threads" + (done.isEmpty() ? "" : ", " + done.size() + " already done"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private int count = 0;
+
+      @Override
+      public synchronized Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "UB region converter " + count++);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    long start = System.nanoTime();
+    int failed = 0;
+    try (Writer checkpointWriter = new OutputStreamWriter(new FileOutputStream(checkpoint, true),
+        StandardCharsets.UTF_8)) {
+      CompletionService<File> completion = new ExecutorCompletionService<>(executor);
+      for (File file : todo)
+        completion.submit(() -> {
+          convertRegion(file);
+          return file;
+        });
+      for (int remaining = todo.size(); remaining > 0;) {
+        Future<File> result = completion.poll(REPORT_INTERVAL, TimeUnit.SECONDS);
+        if (result == null) {
+          report(start, todo.size() - remaining, todo.size());
+          continue;
+        }
+        --remaining;
+        try {
+          checkpointWriter.write(result.get().getName() + "\n");
+          checkpointWriter.flush();
+        } catch (ExecutionException e) {
+          ++failed;
+          LOGGER.warn("Region conversion failed, it will be retried on the next run: " + e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    report(start, todo.size(), todo.size());
+    if (failed == 0)
+      Files.deleteIfExists(checkpoint.toPath());
+    else
+      LOGGER.warn(failed + " region files not converted, see " + checkpoint);
+  }
+
+  private void report(long start, int filesDone, int files) {
+    double seconds = (System.nanoTime() - start) / 1.0E9;
+    LOGGER.info(filesDone + "/" + files + " region files, " + chunksRead.get() + " chunks read, "
+        + chunksConverted.get() + " converted, "
+        + String.format("%.1f", seconds > 0 ? chunksRead.get() / seconds : 0) + " chunks/s");
+  }
+
+  private void convertRegion(File file) throws IOException {
+    Matcher name = REGION_NAME.matcher(file.getName());
+    name.matches();
+    int regionX = Integer.parseInt(name.group(1));
+    int regionZ = Integer.parseInt(name.group(2));
+
+    Path path = file.toPath();
+    ByteBuffer region;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      region = ByteBuffer.allocate((int) channel.size());
+      while (region.hasRemaining() && channel.read(region) >= 0)
+        ;
+    }
+    region.flip();
+    if (region.limit() < 2 * SECTOR)
+      return;
+
+    // Compression type followed by the compressed chunk, per chunk
+    byte[][] chunks = new byte[1024][];
+    int[] timestamps = new int[1024];
+    boolean changed = false;
+    for (int i = 0; i < 1024; ++i) {
+      int location = region.getInt(i * 4);
+      timestamps[i] = region.getInt(SECTOR + i * 4);
+      int offset = (location >>> 8) * SECTOR;
+      if (location == 0 || offset + 5 > region.limit())
+        continue;
+      int length = region.getInt(offset);
+      if (length <= 1 || offset + 4 + length > region.limit())
+        continue;
+      byte[] stored = new byte[length];
+      region.position(offset + 4);
+      region.get(stored);
+      chunks[i] = stored;
+      chunksRead.incrementAndGet();
+
+      int chunkX = regionX * 32 + (i & 31);
+      int chunkZ = regionZ * 32 + (i >> 5);
+      if (skipped.contains(ChunkPos.asLong(chunkX, chunkZ)))
+        continue;
+      NBTTagCompound data = read(stored);
+      if (data == null || !convertChunk(data))
+        continue;
+      byte[] converted = write(data);
+      // Vanilla can't read chunks of more than 255 sectors
+      if ((converted.length + 4 + SECTOR - 1) / SECTOR < 256) {
+        chunks[i] = converted;
+        timestamps[i] = (int) (System.currentTimeMillis() / 1000);
+        changed = true;
+        chunksConverted.incrementAndGet();
+      }
+    }
+    if (changed)
+      writeRegion(path, chunks, timestamps);
+  }
+
+  private static NBTTagCompound read(byte[] stored) throws IOException {
+    InputStream compressed = new ByteArrayInputStream(stored, 1, stored.length - 1);
+    InputStream input;
+    if (stored[0] == GZIP)
+      input = new GZIPInputStream(compressed);
+    else if (stored[0] == ZLIB)
+      input = new InflaterInputStream(compressed);
+    else
+      return null;
+    try (DataInputStream stream = new DataInputStream(new BufferedInputStream(input))) {
+      return CompressedStreamTools.read(stream);
+    }
+  }
+
+  private static byte[] write(NBTTagCompound data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(ZLIB);
+    try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes)))) {
+      CompressedStreamTools.write(data, stream);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeRegion(Path path, byte[][] chunks, int[] timestamps) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(2 * SECTOR);
+    int sector = 2;
+    for (int i = 0; i < 1024; ++i) {
+      if (chunks[i] == null)
+        continue;
+      int sectors = (chunks[i].length + 4 + SECTOR - 1) / SECTOR;
+      header.putInt(i * 4, sector << 8 | sectors);
+      header.putInt(SECTOR + i * 4, timestamps[i]);
+      sector += sectors;
+    }
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, header);
+      for (byte[] chunk : chunks) {
+        if (chunk == null)
+          continue;
+        int sectors = (chunk.length + 4 + SECTOR - 1) / SECTOR;
+        ByteBuffer buffer = ByteBuffer.allocate(sectors * SECTOR);
+        buffer.putInt(chunk.length);
+        buffer.put(chunk);
+        buffer.rewind();
+        writeFully(channel, buffer);
+      }
+      channel.force(true);
+    }
+    try {
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  /**
+   * Same replacement as {@link UBStoneReplacer#replaceStoneInChunk}, on the
+   * saved sections.
+   *
+   * @return True if the chunk data changed
+   */
+  private boolean convertChunk(NBTTagCompound data) {
+    NBTTagCompound level = data.getCompoundTag("Level");
+    // Chunks not populated yet will be replaced during population
+    if (!level.getBoolean("TerrainPopulated") || marker.isStamped(data))
+      return false;
+    int chunkX = level.getInteger("xPos");
+    int chunkZ = level.getInteger("zPos");
+    int[] biomeValues = replacer.getBiomeValues(chunkX, chunkZ);
+    replacer.resetIntCache();
+    int[] variations = replacer.getVariations(chunkX, chunkZ);
+    byte[] surfaceBiomes = level.getByteArray("Biomes");
+
+    NBTTagList sections = level.getTagList("Sections", 10);
+    for (int i = 0; i < sections.tagCount(); ++i) {
+      NBTTagCompound section = sections.getCompoundTagAt(i);
+      int yPos = section.getByte("Y") << 4;
+      if (yPos >= generationHeight)
+        continue;
+      // Arrays are shared with the tags, changes are saved in place
+      byte[] blocks = section.getByteArray("Blocks");
+      NibbleArray metadata = new NibbleArray(section.getByteArray("Data"));
+      NibbleArray add = section.hasKey("Add", 7) ? new NibbleArray(section.getByteArray("Add")) : null;
+      if (blocks.length != 4096)
+        continue;
+      for (int x = 0; x < 16; ++x) {
+        for (int z = 0; z < 16; ++z) {
+          int column = x * 16 + z;
+          UBBiome biome = replacer.biomeList[biomeValues[column]];
+          // 255 when not set, never excluded
+          int surfaceBiome = surfaceBiomes.length == 256 ? surfaceBiomes[z << 4 | x] & 255 : 255;
+          for (int y = 0; y < 16; ++y) {
+            int index = y << 8 | z << 4 | x;
+            int blockID = (blocks[index] & 255) | (add == null ? 0 : add.get(x, y, z) << 8);
+            IBlockState state = Block.BLOCK_STATE_IDS.getByValue(blockID << 4 | metadata.get(x, y, z));
+            if (state == null)
+              continue;
+            IBlockState replacement = replacer.replacement(state, biome, yPos + y + variations[column],
+                surfaceBiome);
+            if (replacement == null)
+              continue;
+            int stateID = Block.BLOCK_STATE_IDS.get(replacement);
+            if (stateID < 0)
+              continue;
+            blocks[index] = (byte) (stateID >> 4);
+            metadata.set(x, y, z, stateID & 15);
+            if (stateID >> 12 != 0 && add == null) {
+              add = new NibbleArray();
+              section.setByteArray("Add", add.getData());
+            }
+            if (add != null)
+              add.set(x, y, z, stateID >> 12 & 15);
+          }
+        }
+      }
+    }
+    // Even without any block replaced, so it is skipped next time
+    marker.stamp(data);
+    return true;
+  }
+
+}
@@ -0,0 +1,132 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.api.UBBiome;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.network.play.server.SPacketChunkData;
+import net.minecraft.server.management.PlayerChunkMapEntry;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+import java.util.Arrays;
+
+/**
+ * Stone replacement of a chunk split in two phases.<br>
+ * <br>
+ * {@link #compute()} only reads copies of the chunk sections and per column
+ * data prepared on the server thread, so it can run on any thread.
+ * {@link #apply(WorldServer)} writes the result on the server thread. Blocks
+ * changed in between are replaced again from their new state.
+ */
+final class ReplacementPlan {
+
+  final int chunkX;
+  final int chunkZ;
+
+  private final UBStoneReplacer replacer;
+  private final UBBiome[] biomes;
+  private final int[] variations;
+  private final int[] surfaceBiomes;
+  private final int[] sections;
+  private final PaletteAccess.Snapshot[] snapshots;
+
+  /**
+   * Section index << 12 | y << 8 | z << 4 | x
+   */
+  private int[] positions = new int[0];
+  private IBlockState[] expected;
+  private IBlockState[] replacements;
+  private int size = 0;
+
+  ReplacementPlan(UBStoneReplacer replacer, int chunkX, int chunkZ, UBBiome[] biomes, int[] variations,
+      int[] surfaceBiomes, int[] sections, PaletteAccess.Snapshot[] snapshots) {
+    this.replacer = replacer;
+    this.chunkX = chunkX;
+    this.chunkZ = chunkZ;
+    this.biomes = biomes;
+    this.variations = variations;
+    this.surfaceBiomes = surfaceBiomes;
+    this.sections = sections;
+    this.snapshots = snapshots;
+  }
+
+  void compute() {
+    int capacity = 1024;
+    positions = new int[capacity];
+    expected = new IBlockState[capacity];
+    replacements = new IBlockState[capacity];
+    for (int i = 0; i < sections.length; ++i) {
+      PaletteAccess.Snapshot snapshot = snapshots[i];
+      int yPos = sections[i] << 4;
+      for (int x = 0; x < 16; ++x) {
+        for (int z = 0; z < 16; ++z) {
+          int column = x * 16 + z;
+          for (int y = 0; y < 16; ++y) {
+            IBlockState state = snapshot.get(x, y, z);
+            if (state == null)
+              continue;
+            IBlockState replacement = replacer.replacement(state, biomes[column], yPos + y + variations[column],
+                surfaceBiomes[column]);
+            if (replacement == null)
+              continue;
+            if (size == capacity) {
+              capacity *= 2;
+              positions = Arrays.copyOf(positions, capacity);
+              expected = Arrays.copyOf(expected, capacity);
+              replacements = Arrays.copyOf(replacements, capacity);
+            }
+            positions[size] = sections[i] << 12 | y << 8 | z << 4 | x;
+            expected[size] = state;
+            replacements[size] = replacement;
+            ++size;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Must be called from the server thread, after {@link #compute()}.
+   *
+   * @return The replaced chunk
+   */
+  Chunk apply(WorldServer world) {
+    Chunk chunk = world.getChunk(chunkX, chunkZ);
+    ExtendedBlockStorage[] storages = chunk.getBlockStorageArray();
+    for (int i = 0; i < size; ++i) {
+      int position = positions[i];
+      ExtendedBlockStorage storage = storages[position >> 12];
+      if (storage == null)
+        continue;
+      int x = position & 15;
+      int z = position >> 4 & 15;
+      int y = position >> 8 & 15;
+      IBlockState current = storage.get(x, y, z);
+      if (current == expected[i]) {
+        storage.set(x, y, z, replacements[i]);
+      } else {
+        // Changed since the copy, replace from the new state
+        int column = x * 16 + z;
+        IBlockState replacement = replacer.replacement(current, biomes[column],
+            (position >> 12 << 4) + y + variations[column], surfaceBiomes[column]);
+        if (replacement != null)
+          storage.set(x, y, z, replacement);
+      }
+    }
+    if (size > 0)
+      chunkChanged(world, chunk);
+    return chunk;
+  }
+
+  /**
+   * Save the chunk and send it again to the players who may already have
+   * received the vanilla stones.
+   */
+  static void chunkChanged(WorldServer world, Chunk chunk) {
+    chunk.markDirty();
+    PlayerChunkMapEntry entry = world.getPlayerChunkMap().getEntry(chunk.x, chunk.z);
+    if (entry != null && entry.isSentToPlayers())
+      entry.sendPacket(new SPacketChunkData(chunk, 65535));
+  }
+
+}
@@ -0,0 +1,135 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import org.apache.logging.log4j.Level;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Runs the {@link ReplacementPlan}s of a dimension on a worker pool shared by
+ * all dimensions, and applies them on the server thread in submission
+ * order.<br>
+ * <br>
+ * Everything but the pool is only used from the server thread.
+ */
+final class ReplacementPlanner {
+
+  private static final UBLogger LOGGER = new UBLogger(ReplacementPlanner.class, Level.INFO);
+
+  /**
+   * Pending plans per thread before the server thread waits for the oldest
+   */
+  private static final int MAX_PENDING_PER_THREAD = 32;
+
+  private static ForkJoinPool pool;
+
+  private final UBStoneReplacer replacer;
+  private final UBifiedMarker marker;
+  private final int maxPending;
+  private final Queue<Pending> pending = new ArrayDeque<>();
+  /**
+   * Chunks of the pending plans
+   */
+  private final Set<Long> pendingChunks = new HashSet<>();
+
+  ReplacementPlanner(UBStoneReplacer replacer, UBifiedMarker marker, int threads) {
+    this.replacer = replacer;
+    this.marker = marker;
+    this.maxPending = threads * MAX_PENDING_PER_THREAD;
+    synchronized (ReplacementPlanner.class) {
+      if (pool == null) {
+        LOGGER.info("Starting " + threads + " stone replacement threads");
+        pool = new ForkJoinPool(threads, p -> {
+          ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+          thread.setName("UB stone replacement " + thread.getPoolIndex());
+          return thread;
+        }, null, false);
+      }
+    }
+  }
+
+  /**
+   * Stop the worker threads, pending plans must have been applied.
+   */
+  static synchronized void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  void submit(WorldServer world, ReplacementPlan plan) {
+    if (pending.size() >= maxPending)
+      applyOldest(world);
+    pending.add(new Pending(plan, CompletableFuture.runAsync(plan::compute, pool)));
+    pendingChunks.add(ChunkPos.asLong(plan.chunkX, plan.chunkZ));
+  }
+
+  /**
+   * @return True if a plan of the chunk is waiting to be applied
+   */
+  boolean isPending(int chunkX, int chunkZ) {
+    return pendingChunks.contains(ChunkPos.asLong(chunkX, chunkZ));
+  }
+
+  /**
+   * Apply the plans computed so far, stopping at the first one still running.
+   */
+  void applyCompleted(WorldServer world) {
+    while (!pending.isEmpty() && pending.peek().future.isDone())
+      applyOldest(world);
+  }
+
+  /**
+   * Wait for and apply every pending plan, e.g. before the chunks are saved.
+   */
+  void applyAll(WorldServer world) {
+    while (!pending.isEmpty())
+      applyOldest(world);
+  }
+
+  /**
+   * Apply the pending plan of the chunk, and the plans submitted before it, so
+   * the chunk isn't saved without replacement.
+   */
+  void applyUpTo(WorldServer world, int chunkX, int chunkZ) {
+    while (isPending(chunkX, chunkZ))
+      applyOldest(world);
+  }
+
+  private void applyOldest(WorldServer world) {
+    // Applying may load chunks and submit new plans, so poll before
+    Pending oldest = pending.poll();
+    pendingChunks.remove(ChunkPos.asLong(oldest.plan.chunkX, oldest.plan.chunkZ));
+    try {
+      oldest.future.join();
+      marker.mark(oldest.plan.apply(world));
+    } catch (RuntimeException e) {
+      LOGGER.warn("Stone replacement of chunk " + oldest.plan.chunkX + ";" + oldest.plan.chunkZ
+          + " failed on the worker thread, replacing it synchronously: " + e);
+      Chunk chunk = world.getChunk(oldest.plan.chunkX, oldest.plan.chunkZ);
+      replacer.replaceStoneInChunk(chunk);
+      marker.mark(chunk);
+    }
+  }
+
+  private static final class Pending {
+    final ReplacementPlan plan;
+    final CompletableFuture<Void> future;
+
+    Pending(ReplacementPlan plan, CompletableFuture<Void> future) {
+      this.plan = plan;
+      this.future = future;
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Populated chunks of a dimension waiting for their stone replacement, drained
+ * a few at a time on server ticks so generation spikes don't stack up in the
+ * same ticks.<br>
+ * <br>
+ * Chunks nearest to a player are processed first, otherwise in population
+ * order. Only used from the server thread.
+ */
+final class ReplacementScheduler {
+
+  private final Set<Long> queued = new LinkedHashSet<>();
+
+  void enqueue(int chunkX, int chunkZ) {
+    queued.add(ChunkPos.asLong(chunkX, chunkZ));
+  }
+
+  /**
+   * @return True if the chunk was queued
+   */
+  boolean remove(int chunkX, int chunkZ) {
+    return queued.remove(ChunkPos.asLong(chunkX, chunkZ));
+  }
+
+  int size() {
+    return queued.size();
+  }
+
+  /**
+   * Process the queued chunks until the budget is spent, at least one per call.
+   */
+  void drain(WorldServer world, long budgetNanos, Consumer<Chunk> processor) {
+    if (queued.isEmpty())
+      return;
+    long deadline = System.nanoTime() + budgetNanos;
+    for (long key : byPriority(world)) {
+      // May have been processed by the previous ones
+      if (!queued.remove(key))
+        continue;
+      processor.accept(world.getChunk(x(key), z(key)));
+      if (System.nanoTime() >= deadline)
+        break;
+    }
+  }
+
+  /**
+   * Process every queued chunk, e.g. before the chunks are saved.
+   */
+  void drainAll(WorldServer world, Consumer<Chunk> processor) {
+    // Processing may populate and queue other chunks
+    while (!queued.isEmpty()) {
+      Iterator<Long> oldest = queued.iterator();
+      long key = oldest.next();
+      oldest.remove();
+      processor.accept(world.getChunk(x(key), z(key)));
+    }
+  }
+
+  private long[] byPriority(WorldServer world) {
+    long[] keys = new long[queued.size()];
+    int i = 0;
+    for (long key : queued)
+      keys[i++] = key;
+    if (world.playerEntities.isEmpty())
+      return keys;
+    // Sort on squared distance to the nearest player, then queue order
+    long[] sortable = new long[keys.length];
+    for (i = 0; i < keys.length; ++i)
+      sortable[i] = (long) distanceToPlayers(world, x(keys[i]), z(keys[i])) << 32 | i;
+    Arrays.sort(sortable);
+    long[] result = new long[keys.length];
+    for (i = 0; i < keys.length; ++i)
+      result[i] = keys[(int) sortable[i]];
+    return result;
+  }
+
+  /**
+   * Coordinate difference above which chunks are considered equally far,
+   * keeps the squared distance in an int
+   */
+  private static final int FAR = 30000;
+
+  private static int distanceToPlayers(WorldServer world, int chunkX, int chunkZ) {
+    int result = Integer.MAX_VALUE;
+    for (EntityPlayer player : world.playerEntities) {
+      int dx = (int) Math.min(Math.abs((long) player.chunkCoordX - chunkX), FAR);
+      int dz = (int) Math.min(Math.abs((long) player.chunkCoordZ - chunkZ), FAR);
+      result = Math.min(result, dx * dx + dz * dz);
+    }
+    return result;
+  }
+
+  private static int x(long key) {
+    return (int) key;
+  }
+
+  private static int z(long key) {
+    return (int) (key >> 32);
+  }
+
+}
@@ -0,0 +1,164 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.api.API;
+import exterminatorjeff.undergroundbiomes.api.common.UBSettings;
+import exterminatorjeff.undergroundbiomes.api.enums.UBStoneStyle;
+import exterminatorjeff.undergroundbiomes.common.block.UBStone;
+import exterminatorjeff.undergroundbiomes.config.SettingTracker;
+import exterminatorjeff.undergroundbiomes.config.UBConfig;
+import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockSand;
+import net.minecraft.block.BlockSandStone;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraftforge.fml.common.Loader;
+import vazkii.quark.world.block.BlockSpeleothem;
+
+import java.util.Arrays;
+
+/**
+ * Compiled form of the block checks done by
+ * {@link UBStoneReplacer#replaceStoneInChunk}.<br>
+ * <br>
+ * Every registered block state is sorted once into a {@link Category}, indexed
+ * by {@link Block#getStateId(IBlockState)}, so the replacement loop only has to
+ * do an array read per block. Built again when a replacer is created or one
+ * of the settings it depends on changes.
+ */
+final class ReplacementTable {
+
+  enum Category {
+    SKIP(null), STONE(UBStoneStyle.STONE), COBBLE(UBStoneStyle.COBBLE), MOSSY(UBStoneStyle.MOSSY_COBBLE),
+    MONSTER(UBStoneStyle.MONSTER_STONE), GRAVEL(UBStoneStyle.GRAVEL), SAND(UBStoneStyle.SAND),
+    CLAY(UBStoneStyle.CLAY), SANDSTONE(UBStoneStyle.SANDSTONE), SMOOTH_SANDSTONE(UBStoneStyle.SMOOTH_SANDSTONE),
+    OVERGROWN(UBStoneStyle.OVERGROWN), SPELEOTHEM(UBStoneStyle.SPELEOTHEM), ORE(null);
+
+    /**
+     * Style of the UB block replacing this category, null if it does not map to
+     * a single style
+     */
+    final UBStoneStyle style;
+
+    private Category(UBStoneStyle style) {
+      this.style = style;
+    }
+  }
+
+  private static volatile ReplacementTable current;
+  private static boolean tracked = false;
+
+  private final Category[] categories;
+
+  /**
+   * Sized for the highest state ID, extended block IDs included.
+   */
+  ReplacementTable(UBSettings settings) {
+    int size = 0;
+    for (Block block : Block.REGISTRY)
+      for (IBlockState state : block.getBlockState().getValidStates())
+        size = Math.max(size, Block.getStateId(state) + 1);
+    categories = new Category[size];
+    Arrays.fill(categories, Category.SKIP);
+    boolean quarkPresent = Loader.isModLoaded("quark");
+    for (Block block : Block.REGISTRY) {
+      for (IBlockState state : block.getBlockState().getValidStates()) {
+        int id = Block.getStateId(state);
+        if (id >= 0)
+          categories[id] = categorize(state, settings, quarkPresent);
+      }
+    }
+  }
+
+  /**
+   * Thread safe.
+   *
+   * @return The table of the current settings
+   */
+  static ReplacementTable current() {
+    ReplacementTable table = current;
+    if (table == null)
+      table = build();
+    return table;
+  }
+
+  /**
+   * Built again on next use, state IDs change with the world loaded.
+   */
+  static void reset() {
+    current = null;
+  }
+
+  private static synchronized ReplacementTable build() {
+    if (!tracked) {
+      UBConfig config = (UBConfig) UBConfig.SPECIFIC;
+      SettingTracker<Boolean> rebuild = value -> current = null;
+      config.replaceMonsterStone.addTracker(rebuild);
+      config.replaceCobblestone.addTracker(rebuild);
+      config.replaceOvergrown.addTracker(rebuild);
+      config.replaceMossyCobblestone.addTracker(rebuild);
+      config.replaceGravel.addTracker(rebuild);
+      config.replaceSand.addTracker(rebuild);
+      config.replaceClay.addTracker(rebuild);
+      config.replaceSandstone.addTracker(rebuild);
+      config.replaceSpeleothems.addTracker(rebuild);
+      tracked = true;
+    }
+    ReplacementTable table = current;
+    if (table == null) {
+      table = new ReplacementTable(UBConfig.SPECIFIC);
+      current = table;
+    }
+    return table;
+  }
+
+  /**
+   * States registered after the table was built are never replaced.
+   */
+  Category categoryOf(IBlockState state) {
+    int id = Block.getStateId(state);
+    if (id < 0 || id >= categories.length)
+      return Category.SKIP;
+    return categories[id];
+  }
+
+  /**
+   * Same order and conditions as the legacy if chain.
+   */
+  private static Category categorize(IBlockState state, UBSettings settings, boolean quarkPresent) {
+    Block block = state.getBlock();
+    if (block == Blocks.AIR || block == Blocks.WATER || block instanceof UBStone)
+      return Category.SKIP;
+    if (block == Blocks.STONE)
+      return Category.STONE;
+    if (block == Blocks.MONSTER_EGG && settings.replaceMonsterStone())
+      return Category.MONSTER;
+    if (block == Blocks.COBBLESTONE && settings.replaceCobblestone())
+      return Category.COBBLE;
+    if (block.getRegistryName().toString().equals("biomesoplenty:grass")
+        && state.getProperties().toString().contains("=overgrown_stone") && settings.replaceOvergrown())
+      return Category.OVERGROWN;
+    if (block == Blocks.MOSSY_COBBLESTONE && settings.replaceMossyCobblestone())
+      return Category.MOSSY;
+    if (block == Blocks.GRAVEL && settings.replaceGravel())
+      return Category.GRAVEL;
+    if (block == Blocks.SAND && settings.replaceSand()
+        && state.getValue(BlockSand.VARIANT) != BlockSand.EnumType.RED_SAND)
+      return Category.SAND;
+    if (block == Blocks.CLAY && settings.replaceClay())
+      return Category.CLAY;
+    if (block == Blocks.SANDSTONE && settings.replaceSandstone()
+        && state.getValue(BlockSandStone.TYPE) == BlockSandStone.EnumType.DEFAULT)
+      return Category.SANDSTONE;
+    if (block == Blocks.SANDSTONE && settings.replaceSandstone()
+        && state.getValue(BlockSandStone.TYPE) == BlockSandStone.EnumType.SMOOTH)
+      return Category.SMOOTH_SANDSTONE;
+    if (quarkPresent && settings.replaceSpeleothems() && block instanceof BlockSpeleothem)
+      return Category.SPELEOTHEM;
+    // UB ores are registered for the 3 stone types at once
+    if (OresRegistry.INSTANCE.isUBified(API.IGNEOUS_STONE.getBlock(), state))
+      return Category.ORE;
+    return Category.SKIP;
+  }
+
+}
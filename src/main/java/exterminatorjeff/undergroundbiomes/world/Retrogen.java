@@ -0,0 +1,112 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Stone replacement of chunks generated before UB was installed, or with other
+ * UB settings.<br>
+ * <br>
+ * Populated chunks loaded without a matching {@link UBifiedMarker} are queued,
+ * and a few are replaced each server tick. The queue is saved with the
+ * dimension, so pending chunks are loaded again and replaced after a restart.
+ * One instance lives from the load of its dimension to its unload.
+ */
+final class Retrogen {
+
+  /**
+   * Chunks may be loaded on the IO thread
+   */
+  private final Queue<Long> loaded = new ConcurrentLinkedQueue<>();
+  private final int chunksPerTick;
+  private final long budgetNanos;
+  private RetrogenData data;
+
+  private final long sessionStart = System.nanoTime();
+  private long sessionProcessed = 0;
+
+  Retrogen(int chunksPerTick, int budgetMillis) {
+    this.chunksPerTick = Math.max(1, chunksPerTick);
+    this.budgetNanos = budgetMillis * 1000000L;
+  }
+
+  /**
+   * Thread safe, the chunk must not be UBified.
+   */
+  void onChunkLoad(Chunk chunk) {
+    // Chunks not populated yet will be replaced during population
+    if (chunk.isTerrainPopulated())
+      loaded.add(ChunkPos.asLong(chunk.x, chunk.z));
+  }
+
+  /**
+   * Move the chunks loaded since the last tick to the saved queue.
+   */
+  void flush(WorldServer world) {
+    if (data == null)
+      data = RetrogenData.get(world);
+    Long key;
+    while ((key = loaded.poll()) != null)
+      if (data.pending.add(key))
+        data.markDirty();
+  }
+
+  /**
+   * @param planner Null if the replacement is synchronous
+   */
+  void tick(WorldServer world, UBifiedMarker marker, ReplacementPlanner planner, Consumer<Chunk> processor) {
+    flush(world);
+
+    long deadline = System.nanoTime() + budgetNanos;
+    for (int i = 0; i < chunksPerTick && !data.pending.isEmpty() && System.nanoTime() < deadline; ++i) {
+      Iterator<Long> oldest = data.pending.iterator();
+      long next = oldest.next();
+      oldest.remove();
+      data.markDirty();
+      int chunkX = (int) next;
+      int chunkZ = (int) (next >> 32);
+      // Already being replaced, marked once the plan is applied
+      if (planner != null && planner.isPending(chunkX, chunkZ))
+        continue;
+      // Pending since a previous session or unloaded since
+      boolean wasLoaded = world.getChunkProvider().getLoadedChunk(chunkX, chunkZ) != null;
+      Chunk chunk = world.getChunk(chunkX, chunkZ);
+      // Loading it queued it again
+      if (!wasLoaded)
+        loaded.remove(next);
+      if (marker.isMarked(chunk))
+        continue;
+      processor.accept(chunk);
+      ++data.processed;
+      ++sessionProcessed;
+      if (!wasLoaded && !world.getPlayerChunkMap().contains(chunkX, chunkZ))
+        world.getChunkProvider().queueUnload(chunk);
+    }
+  }
+
+  String status() {
+    if (data == null)
+      return "not started";
+    double seconds = (System.nanoTime() - sessionStart) / 1.0E9;
+    double rate = seconds > 0 ? sessionProcessed / seconds : 0;
+    int pending = data.pending.size() + loaded.size();
+    String eta = pending == 0 ? "done" : rate > 0 ? "ETA " + formatDuration((long) (pending / rate)) : "ETA unknown";
+    return data.processed + " chunks replaced (" + sessionProcessed + " this session, "
+        + String.format("%.2f", rate) + " chunks/s), " + pending + " pending, " + eta;
+  }
+
+  private static String formatDuration(long seconds) {
+    if (seconds < 60)
+      return seconds + "s";
+    if (seconds < 3600)
+      return seconds / 60 + "m " + seconds % 60 + "s";
+    return seconds / 3600 + "h " + seconds / 60 % 60 + "m";
+  }
+
+}
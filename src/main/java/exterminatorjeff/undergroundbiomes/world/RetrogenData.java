@@ -0,0 +1,64 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.storage.MapStorage;
+import net.minecraft.world.storage.WorldSavedData;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Retrogen progress of a dimension: chunks waiting for their stone replacement
+ * and number of chunks done so far.<br>
+ * <br>
+ * Must be public with a name constructor to be loaded by the world storage.
+ */
+public final class RetrogenData extends WorldSavedData {
+
+  private static final String NAME = "UndergroundBiomesRetrogen";
+
+  /**
+   * Packed {@link ChunkPos}, in load order
+   */
+  final Set<Long> pending = new LinkedHashSet<>();
+  long processed = 0;
+
+  public RetrogenData(String name) {
+    super(name);
+  }
+
+  static RetrogenData get(World world) {
+    MapStorage storage = world.getPerWorldStorage();
+    RetrogenData data = (RetrogenData) storage.getOrLoadData(RetrogenData.class, NAME);
+    if (data == null) {
+      data = new RetrogenData(NAME);
+      storage.setData(NAME, data);
+    }
+    return data;
+  }
+
+  @Override
+  public void readFromNBT(NBTTagCompound nbt) {
+    processed = nbt.getLong("Processed");
+    pending.clear();
+    int[] positions = nbt.getIntArray("Pending");
+    for (int i = 0; i + 1 < positions.length; i += 2)
+      pending.add(ChunkPos.asLong(positions[i], positions[i + 1]));
+  }
+
+  @Override
+  public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
+    nbt.setLong("Processed", processed);
+    int[] positions = new int[pending.size() * 2];
+    int i = 0;
+    for (long key : pending) {
+      positions[i++] = (int) key;
+      positions[i++] = (int) (key >> 32);
+    }
+    nbt.setIntArray("Pending", positions);
+    return nbt;
+  }
+
+}
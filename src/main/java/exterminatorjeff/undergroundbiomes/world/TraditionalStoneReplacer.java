@@ -10,16 +10,31 @@ package exterminatorjeff.undergroundbiomes.world;
 
 import exterminatorjeff.undergroundbiomes.api.UBBiome;
 import exterminatorjeff.undergroundbiomes.api.UndergroundBiomeSet;
+import exterminatorjeff.undergroundbiomes.config.UBConfig;
 import exterminatorjeff.undergroundbiomes.world.noise.SimplexNoiseGenerator;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.gen.layer.GenLayer;
 import net.minecraft.world.gen.layer.GenLayerSmooth;
 import net.minecraft.world.gen.layer.GenLayerVoronoiZoom;
 import net.minecraft.world.gen.layer.GenLayerZoom;
+import net.minecraft.world.gen.layer.IntCache;
 
 public class TraditionalStoneReplacer extends UBStoneReplacer {
 
   private GenLayer undergroundBiomeIndexLayer;
+  /**
+   * Biome indices of the last chunks, one byte per column
+   */
+  private final ChunkCache<byte[]> biomeValuesCache = new ChunkCache<>("Underground biomes",
+      UBConfig.SPECIFIC.biomeCacheSize());
+  private static final int TILE_SHIFT = 6;
+  private static final int TILE_SIZE = 1 << TILE_SHIFT;
+  /**
+   * Biome indices of {@value #TILE_SIZE}x{@value #TILE_SIZE} areas for single
+   * column queries, keyed by tile coordinates instead of chunk coordinates
+   */
+  private final ChunkCache<byte[]> biomeTilesCache = new ChunkCache<>("Underground biome tiles",
+      UBConfig.SPECIFIC.biomeTileCacheSize());
 
   public TraditionalStoneReplacer(long seed, int size, UndergroundBiomeSet biomeSet) {
     super(biomeSet.allowedBiomes(), new SimplexNoiseGenerator(seed));
@@ -31,10 +46,39 @@ public class TraditionalStoneReplacer extends UBStoneReplacer {
 
 
   @Override
-  public int[] getBiomeValues(Chunk chunk) {
+  public int[] getBiomeValues(int chunkX, int chunkZ) {
+    byte[] indices = biomeValuesCache.get(chunkX, chunkZ);
+    if (indices == null) {
+      int[] var7;
+      // GenLayers are not thread safe
+      synchronized (undergroundBiomeIndexLayer) {
+        var7 = this.undergroundBiomeIndexLayer.getInts(chunkX * 16, chunkZ * 16, 16, 16);
+      }
+      indices = new byte[var7.length];
+      for (int i = 0; i < var7.length; i++)
+        indices[i] = (byte) var7[i];
+      biomeValuesCache.put(chunkX, chunkZ, indices);
+    }
+    int[] result = new int[indices.length];
+    for (int i = 0; i < indices.length; i++)
+      result[i] = indices[i] & 0xFF;
+    return result;
+  }
+
+  /**
+   * Release the GenLayer arrays, normally done by the world generation.<br>
+   * {@link IntCache} is shared by every GenLayer: only call this while no
+   * other thread generates terrain.
+   */
+  void resetIntCache() {
+    synchronized (undergroundBiomeIndexLayer) {
+      IntCache.resetIntCache();
+    }
+  }
 
-    int[] var7 = this.undergroundBiomeIndexLayer.getInts(chunk.getPos().x * 16, chunk.getPos().z * 16, 16, 16);
-    return var7;
+  @Override
+  public String cacheReport() {
+    return biomeValuesCache.report() + "; " + biomeTilesCache.report() + "; " + super.cacheReport();
   }
 
   public static GenLayer biomeGenerators(long par0, int size, UndergroundBiomeSet biomeSet) {
@@ -57,11 +101,27 @@ public class TraditionalStoneReplacer extends UBStoneReplacer {
   }
 
   public UBBiome UBBiomeAt(int x, int z) {
-
-    int[] var7 = this.undergroundBiomeIndexLayer.getInts(x, z, 1, 1);
+    // A chunk just replaced is often queried next, e.g. through strataColumn
+    byte[] chunk = biomeValuesCache.peek(x >> 4, z >> 4);
+    if (chunk != null)
+      return biomeList[chunk[(x & 15) + (z & 15) * 16] & 0xFF];
+
+    int tileX = x >> TILE_SHIFT;
+    int tileZ = z >> TILE_SHIFT;
+    byte[] tile = biomeTilesCache.get(tileX, tileZ);
+    if (tile == null) {
+      int[] var7;
+      synchronized (undergroundBiomeIndexLayer) {
+        var7 = this.undergroundBiomeIndexLayer.getInts(tileX * TILE_SIZE, tileZ * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+      }
+      tile = new byte[var7.length];
+      for (int i = 0; i < var7.length; i++)
+        tile[i] = (byte) var7[i];
+      biomeTilesCache.put(tileX, tileZ, tile);
+    }
 
     // Get the underground biome for the position
-    UBBiome currentBiome = biomeList[var7[0]];
+    UBBiome currentBiome = biomeList[tile[(x & (TILE_SIZE - 1)) + (z & (TILE_SIZE - 1)) * TILE_SIZE] & 0xFF];
     return currentBiome;
   }
 }
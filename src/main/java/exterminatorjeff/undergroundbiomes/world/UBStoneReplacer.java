@@ -4,36 +4,51 @@
 package exterminatorjeff.undergroundbiomes.world;
 
 import exterminatorjeff.undergroundbiomes.api.*;
+import exterminatorjeff.undergroundbiomes.api.common.UBLogger;
 import exterminatorjeff.undergroundbiomes.api.enums.UBStoneStyle;
 import exterminatorjeff.undergroundbiomes.common.block.UBStone;
 import exterminatorjeff.undergroundbiomes.config.UBConfig;
+import exterminatorjeff.undergroundbiomes.intermod.OreRecheckQueue;
 import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
 import exterminatorjeff.undergroundbiomes.intermod.StonesRegistry;
 import exterminatorjeff.undergroundbiomes.world.noise.NoiseGenerator;
 import net.minecraft.block.Block;
+import net.minecraft.block.BlockGrass;
 import net.minecraft.block.BlockSand;
 import net.minecraft.block.BlockSandStone;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Biomes;
 import net.minecraft.init.Blocks;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
+import net.minecraft.world.biome.Biome;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkPrimer;
+import net.minecraft.world.chunk.IChunkProvider;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.minecraft.block.properties.PropertyBool;
 import vazkii.quark.world.block.BlockSpeleothem;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import exterminatorjeff.undergroundbiomes.common.block.*;
 import exterminatorjeff.undergroundbiomes.api.enums.UBStoneType;
 import exterminatorjeff.undergroundbiomes.api.API;
 import net.minecraftforge.fml.common.Loader;
+import org.apache.logging.log4j.Level;
+
+import java.util.function.Predicate;
 
 public abstract class UBStoneReplacer implements UBStrataColumnProvider {
 
   final UBBiome[] biomeList;
   final NoiseGenerator noiseGenerator;
+  private final VariationGrid variationGrid;
+  private final Predicate<IBlockState> replaceable;
+
+  private static final UBLogger LOGGER = new UBLogger(UBStoneReplacer.class, Level.INFO);
+  // values() clones the array on each call
+  private static final UBSpeleothem.EnumSize[] SPELEOTHEM_SIZES = UBSpeleothem.EnumSize.values();
+  private long sectionsSkipped = 0;
+  private long sectionsProcessed = 0;
 
   public UBStoneReplacer(UBBiome[] biomeList, NoiseGenerator noiseGenerator) {
     this.biomeList = biomeList;
@@ -42,12 +57,284 @@ public abstract class UBStoneReplacer implements UBStrataColumnProvider {
       throw new RuntimeException();
     if (noiseGenerator == null)
       throw new RuntimeException();
+    ReplacementTable.reset();
+    BiomeExclusions.INSTANCE.init();
+    this.variationGrid = new VariationGrid(noiseGenerator, UBConfig.SPECIFIC.strictStrataVariation());
+    this.replaceable = state -> ReplacementTable.current().categoryOf(state) != ReplacementTable.Category.SKIP;
   }
 
-  public abstract int[] getBiomeValues(Chunk chunk);
+  public abstract int[] getBiomeValues(int chunkX, int chunkZ);
+
+  public int[] getBiomeValues(Chunk chunk) {
+    return getBiomeValues(chunk.x, chunk.z);
+  }
+
+  /**
+   * The returned array is shared, do not modify it.
+   *
+   * @return The strata height variation of the 256 columns of the chunk
+   */
+  int[] getVariations(int chunkX, int chunkZ) {
+    return variationGrid.forChunk(chunkX, chunkZ);
+  }
 
-  @SuppressWarnings("deprecation")
   public void replaceStoneInChunk(Chunk chunk) {
+    if (UBConfig.SPECIFIC.legacyStoneReplacement()) {
+      legacyReplaceStoneInChunk(chunk);
+      return;
+    }
+    int[] biomeValues = getBiomeValues(chunk);
+    int[] variations = variationGrid.forChunk(chunk.x, chunk.z);
+    byte[] surfaceBiomes = chunk.getBiomeArray();
+    BlockPos.MutableBlockPos columnPos = new BlockPos.MutableBlockPos();
+    int generationHeight = UBConfig.SPECIFIC.generationHeight();
+    int skipped = 0;
+    int processed = 0;
+
+    // For each storage array
+    for (ExtendedBlockStorage storage : chunk.getBlockStorageArray()) {
+      if (storage != null && !storage.isEmpty()) {
+        int yPos = storage.getYLocation();
+        if (yPos >= generationHeight)
+          break;
+        // Nothing in the palette to replace, e.g. only air, water or UB stone
+        if (!PaletteAccess.anyPaletteState(storage, replaceable)) {
+          ++skipped;
+          continue;
+        }
+        ++processed;
+        //
+        for (int x = 0; x < 16; ++x) {
+          for (int z = 0; z < 16; ++z) {
+            // Get the underground biome for the position
+            UBBiome currentBiome = biomeList[biomeValues[x * 16 + z]];
+            if (currentBiome == null)
+              throw new RuntimeException("" + biomeValues[x * 16 + z]);
+            //
+            // Perlin noise for strata layers height variation
+            int variation = variations[x * 16 + z];
+            int surfaceBiome = surfaceBiomeID(chunk, surfaceBiomes, columnPos, x, z);
+            for (int y = 0; y < 16; ++y) {
+              IBlockState replacement = replacement(storage.get(x, y, z), currentBiome, yPos + y + variation,
+                  surfaceBiome);
+              if (replacement != null)
+                storage.set(x, y, z, replacement);
+            }
+          }
+        }
+      }
+    }
+    sectionsSkipped += skipped;
+    sectionsProcessed += processed;
+    LOGGER.debug("Chunk " + chunk.x + ";" + chunk.z + ": " + skipped + " sections skipped, " + processed
+        + " processed (total " + sectionsSkipped + " skipped, " + sectionsProcessed + " processed)");
+  }
+
+  /**
+   * Replacement done while the terrain is generated, before ores and
+   * decorations. The population pass still runs for what they place.<br>
+   * <br>
+   * Blocks close to air are left to the population pass, so the stone
+   * around the spots where springs may generate is still vanilla stone.
+   *
+   * @param surfaceBiomes Indexed like the chunk biome array
+   */
+  public void replaceStoneInPrimer(int chunkX, int chunkZ, ChunkPrimer primer, Biome[] surfaceBiomes) {
+    if (UBConfig.SPECIFIC.legacyStoneReplacement())
+      return;
+    int[] biomeValues = getBiomeValues(chunkX, chunkZ);
+    int[] variations = variationGrid.forChunk(chunkX, chunkZ);
+    int generationHeight = Math.min(UBConfig.SPECIFIC.generationHeight(), 256);
+    boolean[] springArea = springArea(primer, generationHeight);
+    for (int x = 0; x < 16; ++x) {
+      for (int z = 0; z < 16; ++z) {
+        UBBiome currentBiome = biomeList[biomeValues[x * 16 + z]];
+        if (currentBiome == null)
+          throw new RuntimeException("" + biomeValues[x * 16 + z]);
+        int variation = variations[x * 16 + z];
+        int surfaceBiome = Biome.getIdForBiome(surfaceBiomes[z << 4 | x]);
+        int column = (x << 4 | z) << 8;
+        for (int y = 0; y < generationHeight; ++y) {
+          if (springArea[column | y])
+            continue;
+          IBlockState replacement = replacement(primer.getBlockState(x, y, z), currentBiome, y + variation,
+              surfaceBiome);
+          if (replacement != null)
+            primer.setBlockState(x, y, z, replacement);
+        }
+      }
+    }
+  }
+
+  /**
+   * Lowest block springs may need: the one below a spring at y 8
+   */
+  private static final int SPRING_MIN_Y = 7;
+
+  /**
+   * Blocks within 2 blocks of air, everything a spring next to that air
+   * checks for stone. Air in the neighbouring chunks isn't known.
+   *
+   * @return Indexed by (x << 4 | z) << 8 | y
+   */
+  private static boolean[] springArea(ChunkPrimer primer, int height) {
+    boolean[] area = new boolean[1 << 16];
+    IBlockState air = Blocks.AIR.getDefaultState();
+    for (int x = 0; x < 16; ++x)
+      for (int z = 0; z < 16; ++z)
+        for (int y = SPRING_MIN_Y; y < height; ++y)
+          area[(x << 4 | z) << 8 | y] = primer.getBlockState(x, y, z) == air;
+    return grow(grow(area, height), height);
+  }
+
+  private static boolean[] grow(boolean[] area, int height) {
+    boolean[] result = area.clone();
+    for (int x = 0; x < 16; ++x) {
+      for (int z = 0; z < 16; ++z) {
+        for (int y = SPRING_MIN_Y; y < height; ++y) {
+          int index = (x << 4 | z) << 8 | y;
+          if (!area[index])
+            continue;
+          if (x > 0) result[index - (1 << 12)] = true;
+          if (x < 15) result[index + (1 << 12)] = true;
+          if (z > 0) result[index - (1 << 8)] = true;
+          if (z < 15) result[index + (1 << 8)] = true;
+          if (y > SPRING_MIN_Y) result[index - 1] = true;
+          if (y < height - 1) result[index + 1] = true;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Copies on the server thread everything needed to replace the stones of the
+   * chunk from another thread.
+   *
+   * @return Null if the chunk must be replaced synchronously
+   */
+  ReplacementPlan prepareReplacement(Chunk chunk) {
+    if (UBConfig.SPECIFIC.legacyStoneReplacement())
+      return null;
+    int[] biomeValues = getBiomeValues(chunk);
+    UBBiome[] biomes = new UBBiome[256];
+    for (int i = 0; i < 256; ++i) {
+      biomes[i] = biomeList[biomeValues[i]];
+      if (biomes[i] == null)
+        throw new RuntimeException("" + biomeValues[i]);
+    }
+    byte[] surfaceBiomeArray = chunk.getBiomeArray();
+    BlockPos.MutableBlockPos columnPos = new BlockPos.MutableBlockPos();
+    int[] surfaceBiomes = new int[256];
+    for (int x = 0; x < 16; ++x)
+      for (int z = 0; z < 16; ++z)
+        surfaceBiomes[x * 16 + z] = surfaceBiomeID(chunk, surfaceBiomeArray, columnPos, x, z);
+
+    int generationHeight = UBConfig.SPECIFIC.generationHeight();
+    int[] sections = new int[16];
+    PaletteAccess.Snapshot[] snapshots = new PaletteAccess.Snapshot[16];
+    int count = 0;
+    int skipped = 0;
+    for (ExtendedBlockStorage storage : chunk.getBlockStorageArray()) {
+      if (storage != null && !storage.isEmpty()) {
+        if (storage.getYLocation() >= generationHeight)
+          break;
+        PaletteAccess.Snapshot snapshot = PaletteAccess.snapshot(storage);
+        if (snapshot == null)
+          return null;
+        if (!snapshot.anyPaletteState(replaceable)) {
+          ++skipped;
+          continue;
+        }
+        sections[count] = storage.getYLocation() >> 4;
+        snapshots[count] = snapshot;
+        ++count;
+      }
+    }
+    sectionsSkipped += skipped;
+    sectionsProcessed += count;
+    return new ReplacementPlan(this, chunk.x, chunk.z, biomes, variationGrid.forChunk(chunk.x, chunk.z),
+        surfaceBiomes, Arrays.copyOf(sections, count), Arrays.copyOf(snapshots, count));
+  }
+
+  /**
+   * Thread safe.
+   *
+   * @param layer Height of the block, strata variation included
+   * @return The block replacing {@code state}, null to keep it
+   */
+  IBlockState replacement(IBlockState state, UBBiome biome, int layer, int surfaceBiome) {
+    ReplacementTable.Category category = ReplacementTable.current().categoryOf(state);
+    if (category == ReplacementTable.Category.SKIP)
+      return null;
+    return replacement(category, state, biome.getStrataBlockAtLayer(layer), biome, surfaceBiome);
+  }
+
+  private static int surfaceBiomeID(Chunk chunk, byte[] surfaceBiomes, BlockPos.MutableBlockPos pos, int x, int z) {
+    int id = surfaceBiomes[z << 4 | x] & 255;
+    if (id == 255)
+      // Not set yet, let the chunk compute it
+      id = Biome.getIdForBiome(chunk.getBiome(pos.setPos(x, 0, z), chunk.getWorld().getBiomeProvider()));
+    return id;
+  }
+
+  /**
+   * @return The block replacing {@code currentBlockState}, null to keep it
+   */
+  @SuppressWarnings("deprecation")
+  private IBlockState replacement(ReplacementTable.Category category, IBlockState currentBlockState,
+      IBlockState strata, UBBiome currentBiome, int surfaceBiome) {
+    switch (category) {
+    case STONE:
+      return strata;
+    case ORE:
+      Block strataBlock = strata.getBlock();
+      if (!(strataBlock instanceof UBStone)) {
+        strata = currentBiome.filler;
+        strataBlock = strata.getBlock();
+      }
+      if (strataBlock instanceof UBStone && OresRegistry.INSTANCE.isUBified(strataBlock, currentBlockState)) {
+        UBStone stone = (UBStone) strataBlock;
+        return OresRegistry.INSTANCE.getUBifiedOre(stone, stone.getMetaFromState(strata), currentBlockState);
+      }
+      return null;
+    case GRAVEL:
+      if (BiomeExclusions.INSTANCE.gravelExcluded(surfaceBiome))
+        return null;
+      break;
+    case SAND:
+      if (BiomeExclusions.INSTANCE.sandExcluded(surfaceBiome))
+        return null;
+      break;
+    default:
+      break;
+    }
+    if (!(strata.getBlock() instanceof UBStone))
+      return null;
+    UBStone block = (UBStone) strata.getBlock();
+    UBStoneStyle style = category.style;
+    if (category == ReplacementTable.Category.OVERGROWN && currentBlockState.getValue(BlockGrass.SNOWY))
+      style = UBStoneStyle.OVERGROWN_SNOWED;
+    IBlockState replacement = StonesRegistry.INSTANCE.stoneFor(block.getStoneType(), style).getBlock()
+        .getStateFromMeta(block.getMetaFromState(strata));
+    if (category == ReplacementTable.Category.SPELEOTHEM)
+      replacement = speleothem(replacement, currentBlockState);
+    return replacement;
+  }
+
+  private static IBlockState speleothem(IBlockState replacement, IBlockState quarkSpeleothem) {
+    if (!(replacement.getBlock() instanceof UBSpeleothem))
+      return replacement;
+    int size = Math.max(0, quarkSpeleothem.getValue(BlockSpeleothem.SIZE).ordinal());
+    return replacement.withProperty(UBSpeleothem.SIZE, SPELEOTHEM_SIZES[size]);
+  }
+
+  /**
+   * Original if chain, kept to compare output with
+   * {@link #replaceStoneInChunk(Chunk)}.
+   */
+  @SuppressWarnings("deprecation")
+  private void legacyReplaceStoneInChunk(Chunk chunk) {
     boolean quarkpresent = Loader.isModLoaded("quark");
     int[] biomeValues = getBiomeValues(chunk);
     int xPos = chunk.getPos().x * 16;
@@ -252,49 +539,64 @@ public abstract class UBStoneReplacer implements UBStrataColumnProvider {
 
   abstract public UBBiome UBBiomeAt(int x, int z);
 
+  public String cacheReport() {
+    return variationGrid.report();
+  }
+
+  /**
+   * Redo the ores queued in the loaded chunks of the dimension. Never loads a
+   * chunk, the other positions stay queued.
+   */
   public void redoOres(World world) {
-    HashMap<ChunkPos, ArrayList<BlockPos>> toRedo = OresRegistry.INSTANCE.forRedo(world);
-    for (ChunkPos chunkID : toRedo.keySet()) {
-      ArrayList<BlockPos> locations = toRedo.get(chunkID);
-      Chunk chunk = world.getChunk(chunkID.x, chunkID.z);
-      int[] biomeValues = getBiomeValues(chunk);
-      for (BlockPos location : locations) {
-        IBlockState currentBlockState = chunk.getBlockState(location);
-        UBBiome currentBiome = biomeList[biomeValues[(location.getX() & 15) * 16 + location.getZ() & 15]];
-        int variation = (int) (noiseGenerator.noise((location.getX()) / 55.533, (location.getZ()) / 55.533, 3, 1, 0.5)
-            * 10 - 5);
-        IBlockState strata = currentBiome.getStrataBlockAtLayer(location.getY() + variation);
-        Block strataBlock = strata.getBlock();
-        if (!(strataBlock instanceof UBStone)) {
-          strata = currentBiome.filler;
-          strataBlock = strata.getBlock();
-        }
-        if (OresRegistry.INSTANCE.isUBified(strataBlock, currentBlockState)) {
-          if (strataBlock instanceof UBStone) {
-            UBStone stone = (UBStone) strataBlock;
-            IBlockState ore = OresRegistry.INSTANCE.getUBifiedOre(stone, stone.getMetaFromState(strata),
-                currentBlockState);
-            chunk.setBlockState(location, ore);
-          }
+    IChunkProvider provider = world.getChunkProvider();
+    for (OreRecheckQueue.ChunkPositions positions : OresRegistry.INSTANCE.forRedo(world,
+        key -> provider.getLoadedChunk((int) key, (int) (key >> 32)) != null))
+      redoOres(provider.getLoadedChunk(positions.chunkX, positions.chunkZ), positions);
+  }
+
+  /**
+   * Redo the ores queued in the chunk.
+   */
+  public void redoOres(Chunk chunk) {
+    OreRecheckQueue.ChunkPositions positions = OresRegistry.INSTANCE.forRedo(chunk.getWorld(), chunk.x, chunk.z);
+    if (positions != null)
+      redoOres(chunk, positions);
+  }
+
+  private void redoOres(Chunk chunk, OreRecheckQueue.ChunkPositions positions) {
+    int[] biomeValues = getBiomeValues(chunk);
+    BlockPos.MutableBlockPos location = new BlockPos.MutableBlockPos();
+    for (int i = 0; i < positions.size(); ++i) {
+      location.setPos(positions.x(i), positions.y(i), positions.z(i));
+      IBlockState currentBlockState = chunk.getBlockState(location);
+      UBBiome currentBiome = biomeList[biomeValues[(location.getX() & 15) * 16 + (location.getZ() & 15)]];
+      int variation = variationGrid.at(location.getX(), location.getZ());
+      IBlockState strata = currentBiome.getStrataBlockAtLayer(location.getY() + variation);
+      Block strataBlock = strata.getBlock();
+      if (!(strataBlock instanceof UBStone)) {
+        strata = currentBiome.filler;
+        strataBlock = strata.getBlock();
+      }
+      if (OresRegistry.INSTANCE.isUBified(strataBlock, currentBlockState)) {
+        if (strataBlock instanceof UBStone) {
+          UBStone stone = (UBStone) strataBlock;
+          IBlockState ore = OresRegistry.INSTANCE.getUBifiedOre(stone, stone.getMetaFromState(strata),
+              currentBlockState);
+          chunk.setBlockState(location, ore);
         }
       }
     }
   }
 
   @SuppressWarnings("deprecation")
-  private UBStrataColumn strataColumn(final StrataLayer[] strata, final IBlockState fillerBlockCodes,
-      final int variation) {
+  private UBStrataColumn strataColumn(final UBBiome biome, final int variation) {
+    final IBlockState fillerBlockCodes = biome.filler;
     return new UBStrataColumn() {
 
       public IBlockState stone(int y) {
         if (y >= UBConfig.SPECIFIC.generationHeight())
           return Blocks.STONE.getDefaultState();
-        for (int i = 0; i < strata.length; i++) {
-          if (strata[i].heightInLayer(y + variation) == true) {
-            return strata[i].filler;
-          }
-        }
-        return fillerBlockCodes;
+        return biome.getStrataBlockAtLayer(y + variation);
       }
 
       public IBlockState cobblestone(int height) {
@@ -330,7 +632,6 @@ public abstract class UBStoneReplacer implements UBStrataColumnProvider {
   public UBStrataColumn strataColumn(int x, int z) {
     // make sure we have the right chunk
     UBBiome biome = UBBiomeAt(x, z);
-    int variation = (int) (noiseGenerator.noise((x) / 55.533, (z) / 55.533, 3, 1, 0.5) * 10 - 5);
-    return strataColumn(biome.strata, biome.filler, variation);
+    return strataColumn(biome, variationGrid.at(x, z));
   }
 }
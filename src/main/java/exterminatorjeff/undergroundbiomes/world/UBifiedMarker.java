@@ -0,0 +1,106 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.api.API;
+import exterminatorjeff.undergroundbiomes.api.common.UBSettings;
+import net.minecraft.block.Block;
+import net.minecraft.init.Blocks;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.chunk.Chunk;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers which chunks of a dimension went through the stone replacement,
+ * saved with the chunk as a small tag holding the generation version, a hash
+ * of the generation settings and the seed.<br>
+ * <br>
+ * A chunk saved with another version, other settings or another seed is not
+ * considered UBified anymore.
+ */
+final class UBifiedMarker {
+
+  static final String TAG = "UndergroundBiomes";
+
+  /**
+   * Increase when the replacement gives different blocks for the same settings
+   */
+  static final int GENERATION_VERSION = 1;
+
+  private final NBTTagCompound stamp = new NBTTagCompound();
+  /**
+   * Loaded chunks only, chunks are loaded on the IO thread
+   */
+  private final Set<Chunk> marked = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  UBifiedMarker(UBSettings settings, int seed) {
+    stamp.setInteger("Version", GENERATION_VERSION);
+    stamp.setInteger("Config", configHash(settings));
+    stamp.setInteger("Seed", seed);
+  }
+
+  /**
+   * Settings changing the blocks of a replaced chunk
+   */
+  static int configHash(UBSettings settings) {
+    return Objects.hash(settings.biomeSize(), settings.generationHeight(), settings.regularStoneBiomes(),
+        settings.harmoniousStrata(), settings.ubifyOres(), settings.replaceCobblestone(),
+        settings.replaceMonsterStone(), settings.replaceGravel(), settings.replaceClay(),
+        settings.replaceGravelExcludedBiomes(), settings.replaceSandExcludedBiomes(), settings.replaceSand(),
+        settings.replaceSandstone(), settings.replaceOvergrown(), settings.replaceMossyCobblestone(),
+        settings.replaceSpeleothems(), settings.legacyStoneReplacement(), settings.strictStrataVariation(),
+        settings.disableVanillaStoneVariants(), Arrays.hashCode(stonesAllowed(settings)));
+  }
+
+  /**
+   * Stone generation toggles, they decide the underground biomes and strata
+   */
+  private static boolean[] stonesAllowed(UBSettings settings) {
+    Block[] stones = { API.IGNEOUS_STONE.getBlock(), API.METAMORPHIC_STONE.getBlock(),
+        API.SEDIMENTARY_STONE.getBlock() };
+    boolean[] result = new boolean[stones.length * 8 + 1];
+    for (int i = 0; i < stones.length; ++i)
+      for (int meta = 0; meta < 8; ++meta)
+        result[i * 8 + meta] = settings.generationAllowed(stones[i].getStateFromMeta(meta));
+    // Only looked up with regular stone biomes, like UBBiomesSet does
+    result[stones.length * 8] = settings.regularStoneBiomes()
+        && settings.generationAllowed(Blocks.STONE.getDefaultState());
+    return result;
+  }
+
+  boolean isMarked(Chunk chunk) {
+    return marked.contains(chunk);
+  }
+
+  void mark(Chunk chunk) {
+    marked.add(chunk);
+  }
+
+  void onChunkLoad(Chunk chunk, NBTTagCompound data) {
+    if (isStamped(data))
+      marked.add(chunk);
+  }
+
+  void onChunkSave(Chunk chunk, NBTTagCompound data) {
+    if (marked.contains(chunk))
+      stamp(data);
+  }
+
+  /**
+   * @param data Saved chunk data
+   */
+  boolean isStamped(NBTTagCompound data) {
+    return stamp.equals(data.getCompoundTag(TAG));
+  }
+
+  /**
+   * @param data Saved chunk data
+   */
+  void stamp(NBTTagCompound data) {
+    data.setTag(TAG, stamp.copy());
+  }
+
+}
@@ -0,0 +1,96 @@
+package exterminatorjeff.undergroundbiomes.world;
+
+import exterminatorjeff.undergroundbiomes.world.noise.NoiseGenerator;
+
+/**
+ * Strata height variation of every column of a chunk, indexed like the biome
+ * values ({@code x * 16 + z}).<br>
+ * <br>
+ * In strict mode each column gets its own noise evaluation, giving the exact
+ * same values as before. Otherwise the noise is sampled every
+ * {@value #STEP} blocks and bilinearly interpolated. Samples on the chunk
+ * borders are shared with the neighbours, so there are no seams between chunks
+ * generated in the same mode.<br>
+ * <br>
+ * The last chunks computed are kept so the stone replacement, the ores redo
+ * and strata column queries don't compute them again.
+ */
+final class VariationGrid {
+
+  private static final double SCALE = 55.533;
+  private static final int STEP = 4;
+  private static final int SAMPLES = 16 / STEP + 1;
+  private static final int CACHE_SIZE = 64;
+
+  private final NoiseGenerator noiseGenerator;
+  private final boolean strict;
+  private final ChunkCache<int[]> cache = new ChunkCache<>("Strata variation", CACHE_SIZE);
+
+  VariationGrid(NoiseGenerator noiseGenerator, boolean strict) {
+    this.noiseGenerator = noiseGenerator;
+    this.strict = strict;
+  }
+
+  private double noise(int x, int z) {
+    return noiseGenerator.noise(x / SCALE, z / SCALE, 3, 1, 0.5);
+  }
+
+  private static int toVariation(double noise) {
+    return (int) (noise * 10 - 5);
+  }
+
+  /**
+   * The returned array is shared, do not modify it.
+   *
+   * @return The variation of the 256 columns of the chunk
+   */
+  int[] forChunk(int chunkX, int chunkZ) {
+    int[] result = cache.get(chunkX, chunkZ);
+    if (result == null) {
+      result = strict ? computeStrict(chunkX * 16, chunkZ * 16) : computeInterpolated(chunkX * 16, chunkZ * 16);
+      cache.put(chunkX, chunkZ, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return The variation of the column at the given block coordinates
+   */
+  int at(int x, int z) {
+    return forChunk(x >> 4, z >> 4)[(x & 15) * 16 + (z & 15)];
+  }
+
+  String report() {
+    return cache.report();
+  }
+
+  private int[] computeStrict(int xPos, int zPos) {
+    int[] result = new int[256];
+    for (int x = 0; x < 16; ++x)
+      for (int z = 0; z < 16; ++z)
+        result[x * 16 + z] = toVariation(noise(xPos + x, zPos + z));
+    return result;
+  }
+
+  private int[] computeInterpolated(int xPos, int zPos) {
+    double[] samples = new double[SAMPLES * SAMPLES];
+    for (int i = 0; i < SAMPLES; ++i)
+      for (int j = 0; j < SAMPLES; ++j)
+        samples[i * SAMPLES + j] = noise(xPos + i * STEP, zPos + j * STEP);
+
+    int[] result = new int[256];
+    for (int x = 0; x < 16; ++x) {
+      int i = x / STEP;
+      double dx = (double) (x % STEP) / STEP;
+      for (int z = 0; z < 16; ++z) {
+        int j = z / STEP;
+        double dz = (double) (z % STEP) / STEP;
+        double top = samples[i * SAMPLES + j] * (1 - dz) + samples[i * SAMPLES + j + 1] * dz;
+        double bottom = samples[(i + 1) * SAMPLES + j] * (1 - dz) + samples[(i + 1) * SAMPLES + j + 1] * dz;
+        result[x * 16 + z] = toVariation(top * (1 - dx) + bottom * dx);
+      }
+    }
+    return result;
+  }
+
+}
@@ -11,6 +11,8 @@ import exterminatorjeff.undergroundbiomes.common.block.UBStone;
 import exterminatorjeff.undergroundbiomes.common.block.slab.UBStoneSlab;
 import exterminatorjeff.undergroundbiomes.common.block.stairs.UBStoneStairs;
 import exterminatorjeff.undergroundbiomes.config.UBConfig;
+import exterminatorjeff.undergroundbiomes.intermod.OreRecheckQueue;
+import exterminatorjeff.undergroundbiomes.intermod.OresRegistry;
 import exterminatorjeff.undergroundbiomes.intermod.StonesRegistry;
 import net.minecraft.block.*;
 import net.minecraft.block.BlockSlab.EnumBlockHalf;
@@ -18,21 +20,35 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkPrimer;
+import net.minecraft.world.chunk.storage.RegionFileCache;
 import net.minecraft.world.gen.structure.MapGenVillage;
 import net.minecraft.world.gen.structure.StructureStart;
+import net.minecraft.world.storage.ThreadedFileIOBase;
 import net.minecraftforge.event.terraingen.BiomeEvent.GetVillageBlockID;
 import net.minecraftforge.event.terraingen.InitMapGenEvent;
 import net.minecraftforge.event.terraingen.InitMapGenEvent.EventType;
 import net.minecraftforge.event.terraingen.OreGenEvent.GenerateMinable;
 import net.minecraftforge.event.terraingen.PopulateChunkEvent;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.ChunkWatchEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.Event.Result;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 import org.apache.logging.log4j.Level;
 import net.minecraftforge.fml.common.eventhandler.EventPriority;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * @author CurtisA, LouisDB
  */
@@ -43,6 +59,12 @@ public final class WorldGenManager implements UBStrataColumnProvider {
   private final int dimensionID;
   private final UndergroundBiomeSet biomesSet;
   private UBStoneReplacer stoneReplacer;
+  private ReplacementPlanner planner;
+  private ReplacementScheduler scheduler;
+  private UBifiedMarker marker;
+  private Retrogen retrogen;
+  private OreRedoData oreRedo;
+  private long tickBudgetNanos;
 
   private boolean worldLoaded = false;
   private World world;
@@ -58,13 +80,12 @@ public final class WorldGenManager implements UBStrataColumnProvider {
 
   @SubscribeEvent
   public void onWorldLoad(WorldEvent.Load event) {
-    world = event.getWorld();
-
     // TODO World specific config
-    world.getSaveHandler().getWorldDirectory();
+    event.getWorld().getSaveHandler().getWorldDirectory();
 
-    if (world.provider.getDimension() == dimensionID && !worldLoaded) {
+    if (event.getWorld().provider.getDimension() == dimensionID && !worldLoaded) {
       LOGGER.debug("Dimension " + dimensionID + " loaded");
+      world = event.getWorld();
 
       worldLoaded = true;
 
@@ -72,9 +93,218 @@ public final class WorldGenManager implements UBStrataColumnProvider {
       if (UBConfig.SPECIFIC.dimensionSpecificSeeds())
         seed += dimensionID;
       this.stoneReplacer = new TraditionalStoneReplacer(seed, UBConfig.SPECIFIC.biomeSize(), biomesSet);
+      this.marker = new UBifiedMarker(UBConfig.SPECIFIC, seed);
+      if (UBConfig.SPECIFIC.retrogen())
+        this.retrogen = new Retrogen(UBConfig.SPECIFIC.retrogenChunksPerTick(), UBConfig.SPECIFIC.retrogenTickBudget());
+      if (UBConfig.SPECIFIC.replacementThreads() > 0)
+        this.planner = new ReplacementPlanner(stoneReplacer, marker, UBConfig.SPECIFIC.replacementThreads());
+      if (UBConfig.SPECIFIC.replacementTickBudget() > 0) {
+        this.scheduler = new ReplacementScheduler();
+        this.tickBudgetNanos = UBConfig.SPECIFIC.replacementTickBudget() * 1000000L;
+      }
+    }
+  }
+
+  /**
+   * Chunks were saved just before, scheduled replacements and plans were
+   * applied then and the retrogen queue saved. The manager starts again if
+   * the dimension loads again.
+   */
+  @SubscribeEvent
+  public void onWorldUnload(WorldEvent.Unload event) {
+    if (event.getWorld() == world) {
+      LOGGER.debug("Dimension " + dimensionID + " unloaded");
+      world = null;
+      worldLoaded = false;
+      scheduler = null;
+      planner = null;
+      retrogen = null;
+      oreRedo = null;
+    }
+  }
+
+  @SubscribeEvent
+  public void onServerTick(TickEvent.ServerTickEvent event) {
+    if (event.phase == TickEvent.Phase.START && world instanceof WorldServer) {
+      WorldServer worldServer = (WorldServer) world;
+      if (scheduler != null)
+        scheduler.drain(worldServer, tickBudgetNanos, chunk -> replaceStones(worldServer, chunk));
+      if (retrogen != null)
+        retrogen.tick(worldServer, marker, planner, chunk -> replaceStones(worldServer, chunk));
+      if (planner != null)
+        planner.applyCompleted(worldServer);
+    }
+  }
+
+  /**
+   * Replace the stones of every chunk saved in the dimension region files.
+   * Must be called from the server thread, which is blocked until done.
+   */
+  public void convertRegions(int threads) {
+    if (!(world instanceof WorldServer)) {
+      LOGGER.warn("Dimension " + dimensionID + " not loaded, can't be converted");
+      return;
+    }
+    WorldServer worldServer = (WorldServer) world;
+    // Loaded chunks would overwrite the converted ones when saved, replace them in place
+    Set<Long> loaded = new HashSet<>();
+    for (Chunk chunk : worldServer.getChunkProvider().getLoadedChunks()) {
+      loaded.add(ChunkPos.asLong(chunk.x, chunk.z));
+      if (chunk.isTerrainPopulated() && !marker.isMarked(chunk)) {
+        stoneReplacer.replaceStoneInChunk(chunk);
+        marker.mark(chunk);
+        ReplacementPlan.chunkChanged(worldServer, chunk);
+      }
+    }
+    try {
+      ThreadedFileIOBase.getThreadedIOInstance().waitForFinish();
+      RegionFileCache.clearRegionFileReferences();
+      new RegionConverter(new File(worldServer.getChunkSaveLocation(), "region"),
+          (TraditionalStoneReplacer) stoneReplacer, marker, loaded, threads).run();
+    } catch (IOException e) {
+      LOGGER.error("Conversion of dimension " + dimensionID + " failed: " + e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // Region headers cached before the conversion are outdated
+      RegionFileCache.clearRegionFileReferences();
+    }
+  }
+
+  /**
+   * @return Retrogen progress, null if retrogen is disabled
+   */
+  public String retrogenStatus() {
+    return retrogen == null ? null : retrogen.status();
+  }
+
+  @SubscribeEvent
+  public void onWorldSave(WorldEvent.Save event) {
+    // Fired after the chunks are written, what is applied here is saved with
+    // the next save. The final save is preceded by onServerStopping
+    if (event.getWorld().provider.getDimension() == dimensionID && event.getWorld() instanceof WorldServer) {
+      WorldServer worldServer = (WorldServer) event.getWorld();
+      if (scheduler != null)
+        scheduler.drainAll(worldServer, chunk -> replaceStones(worldServer, chunk));
+      if (planner != null)
+        planner.applyAll(worldServer);
+      if (retrogen != null && worldServer == world)
+        retrogen.flush(worldServer);
+    }
+    if (worldLoaded && event.getWorld().provider.getDimension() == dimensionID && !event.getWorld().isRemote)
+      spillOres(event.getWorld());
+  }
+
+  /**
+   * Redo the ores of the loaded chunks and spill the others, they are applied
+   * when their chunk is loaded again.
+   */
+  private void spillOres(World world) {
+    stoneReplacer.redoOres(world);
+    int dropped = 0;
+    for (OreRecheckQueue.ChunkPositions chunk : OresRegistry.INSTANCE.forRedo(world, key -> true))
+      dropped += oreRedo(world).spill(chunk);
+    if (dropped > 0)
+      LOGGER.warn(dropped + " ores redo positions dropped, more than " + OreRedoData.MAX_POSITIONS + " spilled");
+  }
+
+  private OreRedoData oreRedo(World world) {
+    if (oreRedo == null)
+      oreRedo = OreRedoData.get(world);
+    return oreRedo;
+  }
+
+  /**
+   * A deferred chunk must be replaced before a player sees it. The event is
+   * fired right after the chunk is sent, so it is sent again.
+   */
+  @SubscribeEvent
+  public void onChunkWatch(ChunkWatchEvent.Watch event) {
+    WorldServer worldServer = event.getPlayer().getServerWorld();
+    ChunkPos pos = event.getChunk();
+    if (scheduler != null && worldServer.provider.getDimension() == dimensionID && scheduler.remove(pos.x, pos.z)) {
+      Chunk chunk = worldServer.getChunk(pos.x, pos.z);
+      stoneReplacer.replaceStoneInChunk(chunk);
+      marker.mark(chunk);
+      ReplacementPlan.chunkChanged(worldServer, chunk);
+    }
+  }
+
+  @SubscribeEvent
+  public void onChunkLoad(ChunkEvent.Load event) {
+    World world = event.getWorld();
+    if (worldLoaded && !world.isRemote && world.provider.getDimension() == dimensionID) {
+      Chunk chunk = event.getChunk();
+      int[] spilled = oreRedo(world).take(chunk.x, chunk.z);
+      if (spilled != null)
+        OresRegistry.INSTANCE.setRecheck(world, chunk.x, chunk.z, spilled);
+      stoneReplacer.redoOres(chunk);
     }
   }
 
+  @SubscribeEvent
+  public void onChunkUnload(ChunkEvent.Unload event) {
+    // Fired before the chunk is saved
+    Chunk chunk = event.getChunk();
+    if (!worldLoaded || event.getWorld().isRemote || event.getWorld().provider.getDimension() != dimensionID)
+      return;
+    if (scheduler != null && scheduler.remove(chunk.x, chunk.z)) {
+      stoneReplacer.replaceStoneInChunk(chunk);
+      marker.mark(chunk);
+    }
+    // Still loaded at this point, the plan writes into this chunk
+    if (planner != null)
+      planner.applyUpTo((WorldServer) event.getWorld(), chunk.x, chunk.z);
+    stoneReplacer.redoOres(chunk);
+  }
+
+  @SubscribeEvent
+  public void onChunkDataLoad(ChunkDataEvent.Load event) {
+    if (worldLoaded && event.getWorld().provider.getDimension() == dimensionID) {
+      marker.onChunkLoad(event.getChunk(), event.getData());
+      if (retrogen != null && !marker.isMarked(event.getChunk()))
+        retrogen.onChunkLoad(event.getChunk());
+    }
+  }
+
+  @SubscribeEvent
+  public void onChunkDataSave(ChunkDataEvent.Save event) {
+    if (worldLoaded && event.getWorld().provider.getDimension() == dimensionID)
+      marker.onChunkSave(event.getChunk(), event.getData());
+  }
+
+
+  /**
+   * Called before the final save, which happens without any later tick.
+   */
+  public void onServerStopping() {
+    if (!(world instanceof WorldServer))
+      return;
+    WorldServer worldServer = (WorldServer) world;
+    if (scheduler != null)
+      scheduler.drainAll(worldServer, chunk -> replaceStones(worldServer, chunk));
+    if (planner != null)
+      planner.applyAll(worldServer);
+    // The save data is written before WorldEvent.Save
+    if (worldLoaded)
+      spillOres(worldServer);
+    if (retrogen != null)
+      retrogen.flush(worldServer);
+  }
+
+  public void onServerStopped() {
+    if (stoneReplacer != null)
+      LOGGER.info(stoneReplacer.cacheReport());
+    if (oreRedo != null && oreRedo.size() > 0)
+      LOGGER.info(oreRedo.size() + " ores redo positions spilled until their chunk is loaded");
+  }
+
+  /**
+   * Called once after {@link #onServerStopped()} of every dimension.
+   */
+  public static void onServerStoppedAll() {
+    ReplacementPlanner.shutdown();
+  }
 
   private UBBiome blockBiomeValue(int xPos, int zPos) {
     return stoneReplacer.UBBiomeAt(xPos, zPos);
@@ -85,17 +315,50 @@ public final class WorldGenManager implements UBStrataColumnProvider {
   public void onPopulateChunkPost(PopulateChunkEvent.Post event) {
     if (event.getWorld().provider.getDimension() == dimensionID && worldLoaded) {
       Chunk chunk = event.getWorld().getChunk(event.getChunkX(), event.getChunkZ());
-      this.stoneReplacer.replaceStoneInChunk(chunk);
+      // Populate events fired again by other mods
+      if (marker.isMarked(chunk))
+        LOGGER.debug("Chunk " + chunk.x + ";" + chunk.z + " already UBified");
+      else if (planner != null && planner.isPending(chunk.x, chunk.z))
+        LOGGER.debug("Chunk " + chunk.x + ";" + chunk.z + " already being UBified");
+      else if (scheduler != null)
+        scheduler.enqueue(chunk.x, chunk.z);
+      else
+        replaceStones((WorldServer) event.getWorld(), chunk);
       stoneReplacer.redoOres(event.getWorld());
     }
   }
 
-  // May be called by other mods
+  /**
+   * Through the worker threads if enabled, synchronously otherwise.
+   */
+  private void replaceStones(WorldServer world, Chunk chunk) {
+    ReplacementPlan plan = planner == null ? null : stoneReplacer.prepareReplacement(chunk);
+    if (plan != null) {
+      planner.submit(world, plan);
+    } else {
+      stoneReplacer.replaceStoneInChunk(chunk);
+      marker.mark(chunk);
+      ReplacementPlan.chunkChanged(world, chunk);
+    }
+  }
+
+  /**
+   * Called once the terrain of the chunk is generated, caves and ravines
+   * included.
+   */
+  public void onPrimerGenerated(World world, int chunkX, int chunkZ, ChunkPrimer primer) {
+    if (worldLoaded && world.provider.getDimension() == dimensionID)
+      stoneReplacer.replaceStoneInPrimer(chunkX, chunkZ, primer,
+          world.getBiomeProvider().getBiomes(null, chunkX * 16, chunkZ * 16, 16, 16));
+  }
+
+  // May be called by other mods, ignores the UBified marker on purpose
   @SubscribeEvent
   public void onForceReprocessAll(UBForceReProcessEvent event) {
     if (event.getWorld().provider.getDimension() == dimensionID && worldLoaded) {
       Chunk chunk = event.getWorld().getChunk(event.getChunkX(), event.getChunkZ());
       this.stoneReplacer.replaceStoneInChunk(chunk);
+      marker.mark(chunk);
       stoneReplacer.redoOres(event.getWorld());
     }
   }
@@ -107,9 +370,12 @@ public final class WorldGenManager implements UBStrataColumnProvider {
         case GRANITE:
         case DIORITE:
         case ANDESITE:
-          event.setResult(Result.DENY);
+          if (UBConfig.SPECIFIC.disableVanillaStoneVariants())
+            event.setResult(Result.DENY);
           break;
         default:
+          if (UBConfig.SPECIFIC.ubifyOres() && event.getResult() != Result.DENY && DirectOreGenerator.generate(event))
+            event.setResult(Result.DENY);
           break;
       }
     }